@@ -0,0 +1,85 @@
+package org.emrage.twitchbattleapi.points;
+
+import org.emrage.twitchbattleapi.utils.UuidLongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getTopPlayers for scoreboards, with no changes since the last
+ * query and with a few changed players, as between two scoreboard refreshes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeaderboardBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int players;
+
+    @Param({"10"})
+    public int limit;
+
+    @Param({"16"})
+    public int changesPerQuery;
+
+    private UUID[] playerUUIDs;
+    private UuidLongMap playerPoints;
+    private Leaderboard<UUID> leaderboard;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new SplittableRandom(42);
+        playerUUIDs = new UUID[players];
+        playerPoints = new UuidLongMap(players);
+        leaderboard = new Leaderboard<>(playerUUID -> playerPoints.get(playerUUID, Leaderboard.ABSENT));
+        for (int i = 0; i < players; i++) {
+            playerUUIDs[i] = new UUID(random.nextLong(), random.nextLong());
+            playerPoints.put(playerUUIDs[i], random.nextLong(1_000_000L));
+            leaderboard.markDirty(playerUUIDs[i]);
+        }
+
+        // Build the ranking once, so the benchmarks measure incremental updates
+        leaderboard.getTop(limit);
+    }
+
+    @Benchmark
+    public Map<UUID, Long> topUnchanged() {
+        return leaderboard.getTop(limit);
+    }
+
+    @Benchmark
+    public Map<UUID, Long> topAfterChanges() {
+        for (int i = 0; i < changesPerQuery; i++) {
+            UUID playerUUID = playerUUIDs[random.nextInt(players)];
+            playerPoints.addTo(playerUUID, random.nextLong(100L));
+            leaderboard.markDirty(playerUUID);
+        }
+        return leaderboard.getTop(limit);
+    }
+
+    @Benchmark
+    public int rankAfterChange() {
+        UUID playerUUID = playerUUIDs[random.nextInt(players)];
+        playerPoints.addTo(playerUUID, 1L);
+        leaderboard.markDirty(playerUUID);
+        return leaderboard.getRank(playerUUID);
+    }
+}
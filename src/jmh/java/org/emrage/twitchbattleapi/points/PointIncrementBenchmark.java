@@ -0,0 +1,93 @@
+package org.emrage.twitchbattleapi.points;
+
+import org.emrage.twitchbattleapi.utils.UuidLongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a write-behind addPlayerPoints call: the in-memory increment, marking
+ * the leaderboard and queueing the change. The queue is drained into an
+ * in-memory map instead of a database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PointIncrementBenchmark {
+    @Param({"1000", "100000"})
+    public int players;
+
+    private UUID[] playerUUIDs;
+    private UuidLongMap playerPoints;
+    private Leaderboard<UUID> leaderboard;
+    private PointWriteQueue writeQueue;
+    private Map<Object, Long> stored;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        playerUUIDs = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            playerUUIDs[i] = UUID.randomUUID();
+        }
+
+        playerPoints = new UuidLongMap(players);
+        leaderboard = new Leaderboard<>(playerUUID -> playerPoints.get(playerUUID, Leaderboard.ABSENT));
+        stored = new ConcurrentHashMap<>();
+        writeQueue = new PointWriteQueue(batch -> {
+            batch.forEach((key, delta) -> stored.merge(key, delta.getValue(), Long::sum));
+            return List.of();
+        }, 50L, players);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writeQueue.shutdown();
+    }
+
+    private long addPlayerPoints() {
+        UUID playerUUID = playerUUIDs[ThreadLocalRandom.current().nextInt(players)];
+        long newPoints = playerPoints.addTo(playerUUID, 1L);
+        leaderboard.markDirty(playerUUID);
+        writeQueue.enqueue(playerUUID, PointDelta.add(1L));
+        return newPoints;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long addPlayerPoints1Thread() {
+        return addPlayerPoints();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long addPlayerPoints4Threads() {
+        return addPlayerPoints();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long addPlayerPoints16Threads() {
+        return addPlayerPoints();
+    }
+}
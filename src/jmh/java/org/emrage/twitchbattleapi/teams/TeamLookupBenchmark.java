@@ -0,0 +1,87 @@
+package org.emrage.twitchbattleapi.teams;
+
+import org.emrage.twitchbattleapi.utils.UuidLongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the membership lookups behind TeamManager.getPlayerTeam and Team.isMember,
+ * as done for every chat message and tab list entry.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TeamLookupBenchmark {
+    @Param({"1000", "10000"})
+    public int players;
+
+    @Param({"16"})
+    public int teams;
+
+    private UUID[] playerUUIDs;
+    private UuidLongMap playerTeams;
+    private Map<Integer, Team> teamsById;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<Integer, Team> created = new HashMap<>();
+        for (int id = 1; id <= teams; id++) {
+            created.put(id, new Team(id, "team" + id, "Team " + id, "#FF5555"));
+        }
+        teamsById = Map.copyOf(created);
+
+        playerUUIDs = new UUID[players];
+        playerTeams = new UuidLongMap(players);
+        Map<Integer, List<UUID>> members = new HashMap<>();
+        for (int i = 0; i < players; i++) {
+            playerUUIDs[i] = UUID.randomUUID();
+            int teamId = i % teams + 1;
+            members.computeIfAbsent(teamId, id -> new ArrayList<>()).add(playerUUIDs[i]);
+            playerTeams.put(playerUUIDs[i], teamId);
+        }
+        members.forEach((teamId, teamMembers) -> teamsById.get(teamId).setMembers(teamMembers));
+    }
+
+    private UUID randomPlayer() {
+        return playerUUIDs[ThreadLocalRandom.current().nextInt(players)];
+    }
+
+    @Benchmark
+    public Team playerTeam() {
+        int teamId = (int) playerTeams.get(randomPlayer(), -1L);
+        return teamsById.get(teamId);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Team playerTeam16Threads() {
+        return playerTeam();
+    }
+
+    @Benchmark
+    public boolean isMember() {
+        return teamsById.get(1).isMember(randomPlayer());
+    }
+}
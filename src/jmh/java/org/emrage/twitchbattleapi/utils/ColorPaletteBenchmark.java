@@ -0,0 +1,60 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.bukkit.ChatColor;
+import org.emrage.twitchbattleapi.teams.Team;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of matching team colors to chat colors, as done by DisplayUtils.formatText
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColorPaletteBenchmark {
+    private String[] hexColors;
+    private Team team;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hexColors = new String[256];
+        for (int i = 0; i < hexColors.length; i++) {
+            hexColors[i] = String.format("#%06X", ThreadLocalRandom.current().nextInt(0x1000000));
+        }
+        team = new Team(1, "red", "Rot", "#FF5555");
+    }
+
+    @Benchmark
+    public ChatColor nearest() {
+        int rgb = ThreadLocalRandom.current().nextInt(0x1000000);
+        return ColorPalette.nearest((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    @Benchmark
+    public String formatTextHex() {
+        // formatText(text, hexColor): parse and match on every call
+        ColorPalette.Resolved color = ColorPalette.resolve(hexColors[ThreadLocalRandom.current().nextInt(hexColors.length)]);
+        return color.getPrefix(false) + "Text";
+    }
+
+    @Benchmark
+    public String formatTextTeam() {
+        // formatText(text, team): uses the color cached on the team
+        return team.getResolvedColor().getPrefix(false) + "Text";
+    }
+}
@@ -0,0 +1,185 @@
+package org.emrage.twitchbattleapi.loadtest;
+
+import org.emrage.twitchbattleapi.points.PointDelta;
+import org.emrage.twitchbattleapi.storage.StorageBackend;
+import org.emrage.twitchbattleapi.teams.Team;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for the database. Delegates to another storage, adds a fixed
+ * round trip time to every write and counts the calls and written records,
+ * so the write amplification of the API can be measured.
+ */
+public class CountingStorage implements StorageBackend {
+    private final StorageBackend delegate;
+    private final long latencyNanos;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new counting storage
+     * @param delegate The storage that keeps the data
+     * @param latencyMicros Simulated round trip time of each write in microseconds
+     */
+    public CountingStorage(StorageBackend delegate, long latencyMicros) {
+        this.delegate = delegate;
+        this.latencyNanos = latencyMicros * 1000L;
+    }
+
+    /**
+     * Get the number of calls and records of each write operation
+     * @return Operation name to counts, sorted by name
+     */
+    public Map<String, long[]> getCounts() {
+        Map<String, long[]> counts = new TreeMap<>();
+        counters.forEach((operation, counter) -> counts.put(operation, new long[]{counter.calls.sum(), counter.records.sum()}));
+        return counts;
+    }
+
+    /**
+     * Get the total number of write calls
+     * @return The number of calls
+     */
+    public long getTotalCalls() {
+        long calls = 0;
+        for (Counter counter : counters.values()) {
+            calls += counter.calls.sum();
+        }
+        return calls;
+    }
+
+    /**
+     * Get the total number of written records
+     * @return The number of records
+     */
+    public long getTotalRecords() {
+        long records = 0;
+        for (Counter counter : counters.values()) {
+            records += counter.records.sum();
+        }
+        return records;
+    }
+
+    /**
+     * Reset all counts, e.g. after setting up teams
+     */
+    public void resetCounts() {
+        counters.clear();
+    }
+
+    private void write(String operation, int records) {
+        Counter counter = counters.computeIfAbsent(operation, key -> new Counter());
+        counter.calls.increment();
+        counter.records.add(records);
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    @Override
+    public boolean open() {
+        return delegate.open();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean loadTeams(TeamConsumer action) {
+        return delegate.loadTeams(action);
+    }
+
+    @Override
+    public Object insertTeam(Team team) {
+        write("insertTeam", 1);
+        return delegate.insertTeam(team);
+    }
+
+    @Override
+    public boolean updateTeam(Team team) {
+        write("updateTeam", 1);
+        return delegate.updateTeam(team);
+    }
+
+    @Override
+    public boolean deleteTeam(int teamId) {
+        write("deleteTeam", 1);
+        return delegate.deleteTeam(teamId);
+    }
+
+    @Override
+    public boolean reserveTeamIdsUpTo(int usedId) {
+        write("reserveTeamIds", 1);
+        return delegate.reserveTeamIdsUpTo(usedId);
+    }
+
+    @Override
+    public long reserveTeamIds(int count) {
+        write("reserveTeamIds", 1);
+        return delegate.reserveTeamIds(count);
+    }
+
+    @Override
+    public boolean loadPlayers(boolean teamsOnly, PlayerConsumer action) {
+        return delegate.loadPlayers(teamsOnly, action);
+    }
+
+    @Override
+    public String getPlayerName(UUID playerUUID) {
+        return delegate.getPlayerName(playerUUID);
+    }
+
+    @Override
+    public Collection<UUID> ensurePlayers(Map<UUID, String> usernames) {
+        write("ensurePlayers", usernames.size());
+        return delegate.ensurePlayers(usernames);
+    }
+
+    @Override
+    public Collection<UUID> setPlayerTeams(Map<UUID, Integer> teams, Map<UUID, String> usernames) {
+        write("setPlayerTeams", teams.size());
+        return delegate.setPlayerTeams(teams, usernames);
+    }
+
+    @Override
+    public boolean removePlayersFromTeams(Collection<UUID> players) {
+        write("removePlayersFromTeams", players.size());
+        return delegate.removePlayersFromTeams(players);
+    }
+
+    @Override
+    public boolean clearTeam(int teamId) {
+        write("clearTeam", 1);
+        return delegate.clearTeam(teamId);
+    }
+
+    @Override
+    public boolean loadPoints(PointsConsumer action) {
+        return delegate.loadPoints(action);
+    }
+
+    @Override
+    public Collection<Object> writePoints(Map<?, PointDelta> batch) {
+        write("writePoints", batch.size());
+        return delegate.writePoints(batch);
+    }
+
+    @Override
+    public boolean deletePoints(boolean teams) {
+        write("deletePoints", 1);
+        return delegate.deletePoints(teams);
+    }
+
+    private static final class Counter {
+        final LongAdder calls = new LongAdder();
+        final LongAdder records = new LongAdder();
+    }
+}
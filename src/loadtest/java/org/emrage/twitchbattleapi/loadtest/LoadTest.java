@@ -0,0 +1,277 @@
+package org.emrage.twitchbattleapi.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.emrage.twitchbattleapi.TwitchBattleAPI;
+import org.emrage.twitchbattleapi.points.PointSystem;
+import org.emrage.twitchbattleapi.storage.LocalStorage;
+import org.emrage.twitchbattleapi.teams.Team;
+import org.emrage.twitchbattleapi.teams.TeamManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates Twitch event storms against the point system and team manager.
+ * Events are started at a fixed rate, independent of how long earlier events
+ * took, and their latency is measured from the planned start so that a
+ * stalled API shows up in the percentiles instead of lowering the rate.
+ * <p>
+ * Options are passed as key=value arguments:
+ * <ul>
+ *     <li>scenario: raid, hypetrain or steady, sets the event mix (default raid)</li>
+ *     <li>mix: event weights, e.g. award:85,teamAward:5,assign:8,top:2, overrides the scenario</li>
+ *     <li>viewers: number of distinct viewer UUIDs (default 20000)</li>
+ *     <li>teams: number of teams (default 8)</li>
+ *     <li>rate: events per second (default 5000)</li>
+ *     <li>duration: seconds (default 30)</li>
+ *     <li>threads: threads calling the API (default 16)</li>
+ *     <li>writeBehind: whether points are written in the background (default true)</li>
+ *     <li>latency: simulated database round trip per write in microseconds (default 1000)</li>
+ *     <li>results: file to write the results to as JSON (default loadtest-results.json)</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final Map<String, String> SCENARIOS = Map.of(
+            // Many viewers arrive at once, join teams and earn points
+            "raid", "award:80,assign:15,teamAward:3,top:2",
+            // Points for whole teams at a high rate
+            "hypetrain", "teamAward:45,award:45,top:10",
+            // A normal stream
+            "steady", "award:90,assign:2,teamAward:3,top:5");
+
+    private enum EventType {
+        AWARD, TEAM_AWARD, ASSIGN, TOP
+    }
+
+    private final Map<String, String> options;
+    private final Map<EventType, Histogram> latencies = new LinkedHashMap<>();
+    private final Map<EventType, AtomicLong> counts = new LinkedHashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+        for (EventType type : EventType.values()) {
+            // Microseconds, up to one minute with three significant digits
+            latencies.put(type, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3));
+            counts.put(type, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        new LoadTest(options).run();
+        // The API keeps daemon threads, but the stub scheduler may not
+        System.exit(0);
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private int intOption(String key, int defaultValue) {
+        return Integer.parseInt(option(key, String.valueOf(defaultValue)));
+    }
+
+    private void run() throws Exception {
+        String scenario = option("scenario", "raid");
+        String mixSpec = option("mix", SCENARIOS.get(scenario));
+        if (mixSpec == null) {
+            throw new IllegalArgumentException("Unknown scenario " + scenario + ", expected one of " + SCENARIOS.keySet());
+        }
+        EventType[] mix = parseMix(mixSpec);
+        int viewers = intOption("viewers", 20000);
+        int teamCount = intOption("teams", 8);
+        int rate = intOption("rate", 5000);
+        int duration = intOption("duration", 30);
+        int threads = intOption("threads", 16);
+        boolean writeBehind = Boolean.parseBoolean(option("writeBehind", "true"));
+        long latencyMicros = Long.parseLong(option("latency", "1000"));
+
+        File dataFolder = Files.createTempDirectory("twitchbattle-loadtest").toFile();
+        JavaPlugin plugin = LoadTestServer.start(dataFolder);
+        plugin.getConfig().set("points.writeBehind.enabled", writeBehind);
+
+        CountingStorage storage = new CountingStorage(new LocalStorage(new File(dataFolder, "data"), 100_000, false), latencyMicros);
+        TwitchBattleAPI api = TwitchBattleAPI.init(plugin, storage);
+        api.getReadyFuture().get(1, TimeUnit.MINUTES);
+
+        TeamManager teamManager = api.getTeamManager();
+        PointSystem pointSystem = api.getPointSystem();
+        int[] teamIds = new int[teamCount];
+        for (int i = 0; i < teamCount; i++) {
+            Team team = teamManager.createTeam("team" + i, "Team " + i, "#FF5555");
+            if (team == null) {
+                throw new IllegalStateException("Failed to create team " + i);
+            }
+            teamIds[i] = team.getId();
+        }
+        UUID[] viewerUUIDs = new UUID[viewers];
+        for (int i = 0; i < viewers; i++) {
+            viewerUUIDs[i] = UUID.randomUUID();
+        }
+        storage.resetCounts();
+
+        System.out.printf(Locale.ROOT, "Running %s: %d events/s for %d s, %d viewers, %d teams, %d threads, write-behind %s, %d us per write%n",
+                scenario, rate, duration, viewers, teamCount, threads, writeBehind, latencyMicros);
+
+        long total = (long) rate * duration;
+        AtomicLong nextEvent = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long event;
+                    while ((event = nextEvent.getAndIncrement()) < total) {
+                        long planned = start + event * 1_000_000_000L / rate;
+                        long wait = planned - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+
+                        EventType type = mix[random.nextInt(mix.length)];
+                        UUID viewer = viewerUUIDs[random.nextInt(viewers)];
+                        int teamId = teamIds[random.nextInt(teamIds.length)];
+                        if (!execute(type, pointSystem, teamManager, viewer, teamId, random)) {
+                            failures.incrementAndGet();
+                        }
+
+                        latencies.get(type).recordValue(Math.min((System.nanoTime() - planned) / 1000L, TimeUnit.MINUTES.toMicros(1)));
+                        counts.get(type).incrementAndGet();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "LoadTest-" + t);
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        // Pending write-behind changes belong to the load
+        long flushStart = System.nanoTime();
+        pointSystem.flush();
+        long flushTime = System.nanoTime() - flushStart;
+
+        report(scenario, mixSpec, total, elapsed, flushTime, storage);
+        api.shutdown();
+    }
+
+    private boolean execute(EventType type, PointSystem pointSystem, TeamManager teamManager,
+                            UUID viewer, int teamId, ThreadLocalRandom random) {
+        switch (type) {
+            case AWARD -> pointSystem.addPlayerPoints(viewer, 1 + random.nextInt(500));
+            case TEAM_AWARD -> pointSystem.addTeamPoints(teamId, 1 + random.nextInt(500));
+            case ASSIGN -> {
+                return teamManager.addPlayerToTeam(viewer, teamId);
+            }
+            case TOP -> pointSystem.getTopPlayers(10);
+        }
+        return true;
+    }
+
+    private static EventType[] parseMix(String spec) {
+        List<EventType> mix = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] entry = part.trim().split(":");
+            EventType type = switch (entry[0]) {
+                case "award" -> EventType.AWARD;
+                case "teamAward" -> EventType.TEAM_AWARD;
+                case "assign" -> EventType.ASSIGN;
+                case "top" -> EventType.TOP;
+                default -> throw new IllegalArgumentException("Unknown event " + entry[0]);
+            };
+            int weight = entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                mix.add(type);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Empty event mix");
+        }
+        return mix.toArray(new EventType[0]);
+    }
+
+    private void report(String scenario, String mix, long total, long elapsed, long flushTime, CountingStorage storage) throws IOException {
+        double seconds = elapsed / 1e9;
+        long mutations = counts.get(EventType.AWARD).get() + counts.get(EventType.TEAM_AWARD).get() + counts.get(EventType.ASSIGN).get();
+        long calls = storage.getTotalCalls();
+        long records = storage.getTotalRecords();
+
+        System.out.printf(Locale.ROOT, "%nEvents: %d in %.2f s = %.0f events/s, %d failed, final flush %.1f ms%n",
+                total, seconds, total / seconds, failures.get(), flushTime / 1e6);
+        System.out.printf(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s%n", "event", "count", "p50 us", "p99 us", "p999 us", "max us");
+        for (EventType type : EventType.values()) {
+            Histogram histogram = latencies.get(type);
+            System.out.printf(Locale.ROOT, "%-10s %10d %10d %10d %10d %10d%n", type.name().toLowerCase(Locale.ROOT), counts.get(type).get(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+        }
+
+        System.out.printf(Locale.ROOT, "%nStorage writes: %d calls, %d records for %d changing events%n", calls, records, mutations);
+        System.out.printf(Locale.ROOT, "Write amplification: %.3f calls and %.3f records per event%n",
+                mutations > 0 ? (double) calls / mutations : 0.0, mutations > 0 ? (double) records / mutations : 0.0);
+        for (Map.Entry<String, long[]> entry : storage.getCounts().entrySet()) {
+            System.out.printf(Locale.ROOT, "  %-24s %10d calls %10d records%n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"scenario\": \"").append(scenario).append("\",\n");
+        json.append("  \"mix\": \"").append(mix).append("\",\n");
+        json.append("  \"options\": {");
+        int index = 0;
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            json.append(index++ > 0 ? ", " : "").append('"').append(option.getKey()).append("\": \"").append(option.getValue()).append('"');
+        }
+        json.append("},\n");
+        json.append(String.format(Locale.ROOT, "  \"events\": %d,%n  \"seconds\": %.3f,%n  \"eventsPerSecond\": %.1f,%n  \"failures\": %d,%n  \"flushMillis\": %.3f,%n",
+                total, seconds, total / seconds, failures.get(), flushTime / 1e6));
+        json.append("  \"latencyMicros\": {\n");
+        index = 0;
+        for (EventType type : EventType.values()) {
+            Histogram histogram = latencies.get(type);
+            json.append(index++ > 0 ? ",\n" : "").append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"p50\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d}",
+                    type.name().toLowerCase(Locale.ROOT), counts.get(type).get(), histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMaxValue()));
+        }
+        json.append("\n  },\n");
+        json.append(String.format(Locale.ROOT, "  \"storage\": {\"calls\": %d, \"records\": %d, \"callsPerEvent\": %.4f, \"recordsPerEvent\": %.4f, \"operations\": {",
+                calls, records, mutations > 0 ? (double) calls / mutations : 0.0, mutations > 0 ? (double) records / mutations : 0.0));
+        index = 0;
+        for (Map.Entry<String, long[]> entry : storage.getCounts().entrySet()) {
+            json.append(index++ > 0 ? ", " : "").append(String.format(Locale.ROOT, "\"%s\": {\"calls\": %d, \"records\": %d}",
+                    entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        json.append("}}\n}\n");
+
+        File results = new File(option("results", "loadtest-results.json"));
+        Files.writeString(results.toPath(), json.toString(), StandardCharsets.UTF_8);
+        System.out.println("\nResults written to " + results.getAbsolutePath());
+    }
+}
@@ -0,0 +1,124 @@
+package org.emrage.twitchbattleapi.loadtest;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Minimal server for running the API outside of Minecraft.
+ * Every server method does nothing, no player is online and no thread is the server thread.
+ */
+final class LoadTestServer {
+    private static final Logger LOGGER = Logger.getLogger("LoadTest");
+
+    private LoadTestServer() {
+    }
+
+    /**
+     * Install the server and create a plugin for the API
+     * @param dataFolder The plugin data folder
+     * @return The plugin
+     */
+    @SuppressWarnings("deprecation")
+    static JavaPlugin start(File dataFolder) throws ReflectiveOperationException {
+        Server server = stub(Server.class);
+
+        // Bukkit.setServer also prints build information, which only a real server has
+        Field field = Bukkit.class.getDeclaredField("server");
+        field.setAccessible(true);
+        field.set(null, server);
+
+        PluginDescriptionFile description = new PluginDescriptionFile("TwitchBattleAPI-LoadTest", "1.0",
+                LoadTestPlugin.class.getName());
+        return new LoadTestPlugin(new JavaPluginLoader(server), description, dataFolder, new File(dataFolder, "loadtest.jar"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + " stub";
+                };
+            }
+
+            // Players are offline, so their stored names are kept
+            if (method.getName().equals("getPlayer") || method.getName().equals("getPlayerExact")) {
+                return null;
+            }
+            return defaultValue(method.getReturnType());
+        };
+        return (T) Proxy.newProxyInstance(LoadTestServer.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type.isPrimitive()) {
+            return 0;
+        }
+        if (type == String.class) {
+            return "LoadTest";
+        }
+        if (type == Logger.class) {
+            return LOGGER;
+        }
+        if (type == List.class || type == Collection.class) {
+            return List.of();
+        }
+        if (type == Set.class) {
+            return Set.of();
+        }
+        if (type == Map.class) {
+            return Collections.emptyMap();
+        }
+        return type.isInterface() ? stub(type) : null;
+    }
+
+    /**
+     * Plugin created with the initialization constructor intended for tests
+     */
+    static final class LoadTestPlugin extends JavaPlugin {
+        @SuppressWarnings("removal")
+        LoadTestPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+            super(loader, description, dataFolder, file);
+        }
+    }
+}
@@ -1,22 +1,59 @@
 package org.emrage.twitchbattleapi;
 
+import org.bson.Document;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.emrage.twitchbattleapi.config.DatabaseConfig;
+import org.emrage.twitchbattleapi.config.DatabaseSettings;
+import org.emrage.twitchbattleapi.database.ChangeStreamSubscriber;
+import org.emrage.twitchbattleapi.database.DatabaseExecutor;
 import org.emrage.twitchbattleapi.database.DatabaseManager;
 import org.emrage.twitchbattleapi.points.PointSystem;
+import org.emrage.twitchbattleapi.storage.BlockingCallDetector;
+import org.emrage.twitchbattleapi.storage.LocalStorage;
+import org.emrage.twitchbattleapi.storage.MongoStorage;
+import org.emrage.twitchbattleapi.storage.StorageBackend;
 import org.emrage.twitchbattleapi.teams.TeamManager;
 import org.emrage.twitchbattleapi.utils.DisplayUtils;
+import org.emrage.twitchbattleapi.utils.KnownPlayers;
+import org.emrage.twitchbattleapi.utils.SnapshotFile;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Main API class for TwitchBattle
  */
 public class TwitchBattleAPI {
+    // last_updated is set by each server's clock, so catching up looks back a bit further
+    private static final long CLOCK_SKEW_MARGIN = 5000L;
+
     private static TwitchBattleAPI instance;
     private final JavaPlugin plugin;
     private DatabaseManager databaseManager;
+    private StorageBackend storage;
+    private BlockingCallDetector blockingDetector;
+    private DatabaseExecutor asyncExecutor;
     private PointSystem pointSystem;
     private TeamManager teamManager;
     private DisplayUtils displayUtils;
+    private final KnownPlayers knownPlayers = new KnownPlayers();
+    private ChangeStreamSubscriber changeSubscriber;
+    private final CompletableFuture<Void> readyFuture = new CompletableFuture<>();
+    private SnapshotFile snapshotFile;
+    private long loadedAt;
+    private final Executor mainThreadExecutor;
 
     /**
      * Private constructor for singleton pattern
@@ -24,6 +61,13 @@ public class TwitchBattleAPI {
      */
     private TwitchBattleAPI(JavaPlugin plugin) {
         this.plugin = plugin;
+        this.mainThreadExecutor = task -> {
+            if (Bukkit.isPrimaryThread()) {
+                task.run();
+            } else {
+                Bukkit.getScheduler().runTask(plugin, task);
+            }
+        };
     }
 
     /**
@@ -54,25 +98,251 @@ public class TwitchBattleAPI {
     }
 
     /**
-     * Initialize the database and components
+     * Initialize the API with a custom storage instead of the configured one,
+     * e.g. for load tests. The storage is opened and closed by the API.
+     * @param plugin The plugin that is using this API
+     * @param storage The storage
+     * @return The API instance
+     */
+    public static TwitchBattleAPI init(JavaPlugin plugin, StorageBackend storage) {
+        if (instance == null) {
+            instance = new TwitchBattleAPI(plugin);
+            instance.storage = storage;
+            instance.initializeComponents();
+        }
+        return instance;
+    }
+
+    /**
+     * Initialize the storage and components
      */
     private void initializeComponents() {
         try {
-            this.databaseManager = new DatabaseManager();
-            this.databaseManager.connect();
-            this.databaseManager.createTables();
+            long operationTimeout = plugin.getConfig().getLong("database.operationTimeout", 10000L);
+            // A storage passed to init is used as is
+            if (storage == null && isLocalStorage()) {
+                this.storage = new LocalStorage(
+                        new File(plugin.getDataFolder(), plugin.getConfig().getString("storage.local.directory", "data")),
+                        plugin.getConfig().getInt("storage.local.snapshotInterval", 10000),
+                        plugin.getConfig().getBoolean("storage.local.fsync", false));
+            } else if (storage == null) {
+                this.databaseManager = new DatabaseManager();
+                this.databaseManager.setBatchSize(plugin.getConfig().getInt("database.batchSize", 1000));
+                this.databaseManager.setSettings(DatabaseSettings.fromConfig(plugin.getConfig().getConfigurationSection("database")));
+                this.databaseManager.setOperationTimeout(operationTimeout);
+                this.databaseManager.getMetrics().setSlowQueryThreshold(plugin.getConfig().getLong("database.metrics.slowQueryThreshold", 100L));
+                if (plugin.getConfig().getBoolean("database.metrics.jmx", true)) {
+                    this.databaseManager.getMetrics().enableJmx();
+                }
+                this.storage = new MongoStorage(databaseManager);
+            }
+
+            if (!storage.open()) {
+                throw new IllegalStateException("Failed to open the storage");
+            }
+            if (plugin.getConfig().getBoolean("diagnostics.blockingDetector.enabled", false)) {
+                this.blockingDetector = new BlockingCallDetector(storage,
+                        plugin.getConfig().getInt("diagnostics.blockingDetector.stackSampleInterval", 100));
+                this.storage = blockingDetector;
+            }
+            this.asyncExecutor = databaseManager != null
+                    ? databaseManager.getExecutor()
+                    : new DatabaseExecutor(plugin.getConfig().getInt("database.pool.maxSize", 20), operationTimeout);
 
             this.teamManager = new TeamManager(this);
             this.pointSystem = new PointSystem(this);
             this.displayUtils = new DisplayUtils(this);
 
-            plugin.getLogger().info("[TwitchBattleAPI] Successfully initialized API with MongoDB");
+            loadData();
         } catch (Exception e) {
             plugin.getLogger().severe("[TwitchBattleAPI] Failed to initialize API: " + e.getMessage());
             e.printStackTrace();
+            readyFuture.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Load teams, points and player names concurrently in the background
+     */
+    private void loadData() {
+        long start = System.currentTimeMillis();
+        this.loadedAt = start;
+        ExecutorService loader = Executors.newFixedThreadPool(3, r -> {
+            Thread thread = new Thread(r, "TwitchBattleAPI-Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Warm start: state of the last run from the snapshot, only changes since then from MongoDB
+        SnapshotFile snapshot = openSnapshot();
+        CompletableFuture<Void> loaded;
+        if (snapshot != null) {
+            long since = snapshot.getValidFrom();
+            loaded = CompletableFuture.allOf(
+                    CompletableFuture.runAsync(() -> teamManager.loadTeams(snapshot.getSection(0), since), loader),
+                    CompletableFuture.runAsync(() -> pointSystem.loadPoints(snapshot.getSection(1), since), loader),
+                    CompletableFuture.runAsync(() -> displayUtils.getNameCache().load(snapshot.getSection(2), since), loader),
+                    // Unchanged players without a team are not read again, but still have a document
+                    CompletableFuture.runAsync(() -> knownPlayers.load(snapshot.getSection(3)), loader));
+        } else {
+            loaded = CompletableFuture.allOf(
+                    CompletableFuture.runAsync(teamManager::loadTeams, loader),
+                    CompletableFuture.runAsync(pointSystem::loadPoints, loader),
+                    CompletableFuture.runAsync(displayUtils.getNameCache()::load, loader));
+        }
+
+        loaded.whenComplete((result, error) -> {
+            loader.shutdown();
+            if (snapshot != null) {
+                snapshot.release();
+            }
+            if (error != null) {
+                plugin.getLogger().severe("[TwitchBattleAPI] Failed to load data: " + error.getMessage());
+                readyFuture.completeExceptionally(error);
+            } else {
+                plugin.getLogger().info("[TwitchBattleAPI] Successfully initialized API with "
+                        + (databaseManager != null ? "MongoDB" : storage.getClass().getSimpleName()) + ", data loaded in "
+                        + (System.currentTimeMillis() - start) + " ms"
+                        + (snapshot != null ? " from the snapshot of " + new Date(snapshot.getCreatedAt()) : ""));
+                startSync(start);
+                readyFuture.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Read the snapshot of the last run, if warm starts are enabled
+     * @return The snapshot, or null if there is no usable snapshot
+     */
+    private SnapshotFile openSnapshot() {
+        // The local storage reads its own files, a snapshot would not save anything
+        if (databaseManager == null || !plugin.getConfig().getBoolean("cache.warmStart.enabled", false)) {
+            return null;
+        }
+
+        String source = DatabaseConfig.getHost() + ":" + DatabaseConfig.getPort() + "/" + DatabaseConfig.getDatabaseName();
+        snapshotFile = new SnapshotFile(new File(plugin.getDataFolder(), plugin.getConfig().getString("cache.warmStart.file", "cache.snapshot")),
+                source.hashCode());
+        return snapshotFile.read() ? snapshotFile : null;
+    }
+
+    /**
+     * Write the cached state for a warm start of the next run
+     */
+    private void writeSnapshot() {
+        if (snapshotFile == null || !isReady()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        // Everything changed in MongoDB since loading began is read again on the next start
+        boolean written = snapshotFile.write(loadedAt - CLOCK_SKEW_MARGIN, List.of(
+                SnapshotFile.section(teamManager::estimateSnapshotSize, teamManager::writeSnapshot),
+                SnapshotFile.section(pointSystem::estimateSnapshotSize, pointSystem::writeSnapshot),
+                SnapshotFile.section(displayUtils.getNameCache()::estimateSnapshotSize, displayUtils.getNameCache()::writeSnapshot),
+                SnapshotFile.section(knownPlayers::estimateSnapshotSize, knownPlayers::writeSnapshot)));
+        if (written) {
+            plugin.getLogger().info("[TwitchBattleAPI] Wrote snapshot for the next start in " + (System.currentTimeMillis() - start) + " ms");
         }
     }
 
+    /**
+     * Keep the caches in sync with changes made by other servers, if enabled
+     * @param loadedAt Time at which loading started
+     */
+    private void startSync(long loadedAt) {
+        if (!plugin.getConfig().getBoolean("sync.enabled", false)) {
+            return;
+        }
+        if (databaseManager == null) {
+            plugin.getLogger().warning("[TwitchBattleAPI] Sync needs MongoDB and is disabled with " + storage.getClass().getSimpleName());
+            return;
+        }
+
+        ChangeStreamSubscriber.ChangeListener listener = new ChangeStreamSubscriber.ChangeListener() {
+            @Override
+            public void onUpsert(String collection, Document document) {
+                switch (collection) {
+                    case "points" -> pointSystem.applyRemote(document);
+                    case "teams" -> teamManager.applyRemoteTeam(document);
+                    case "players" -> {
+                        teamManager.applyRemoteMembership(document);
+                        String uuid = document.getString("uuid");
+                        if (uuid != null) {
+                            knownPlayers.add(UUID.fromString(uuid));
+                            displayUtils.getNameCache().put(UUID.fromString(uuid), document.getString("username"));
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+
+            @Override
+            public void onDelete(String collection, Object id) {
+                // Player documents are never deleted by this API
+                switch (collection) {
+                    case "points" -> pointSystem.removeRemote(id);
+                    case "teams" -> teamManager.removeRemoteTeam(id);
+                    default -> {
+                    }
+                }
+            }
+
+            @Override
+            public void onReconcile(String collection, Set<Object> ids) {
+                switch (collection) {
+                    case "points" -> pointSystem.reconcileRemote(ids);
+                    case "teams" -> teamManager.reconcileRemoteTeams(ids);
+                    default -> {
+                    }
+                }
+            }
+
+            @Override
+            public boolean tracksDeletes(String collection) {
+                return !collection.equals("players");
+            }
+        };
+
+        changeSubscriber = new ChangeStreamSubscriber(databaseManager, List.of("teams", "players", "points"), listener,
+                new File(plugin.getDataFolder(), "resume-token.json"),
+                plugin.getConfig().getLong("sync.pollInterval", 2000L),
+                plugin.getConfig().getLong("sync.reconcileInterval", 60000L));
+        changeSubscriber.start(loadedAt);
+    }
+
+    /**
+     * Get a future that completes once all teams, points and player names are loaded.
+     * The API can be used before, but lookups only return loaded data and changes
+     * wait until loading has finished.
+     * @return The ready future
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Wait until all data is loaded. Changes made before would be overwritten by the loaded data.
+     * @return True if the API is ready, false if loading failed
+     */
+    public boolean awaitReady() {
+        try {
+            readyFuture.join();
+            return true;
+        } catch (CompletionException | CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check whether all data has been loaded
+     * @return True if the API is ready
+     */
+    public boolean isReady() {
+        return readyFuture.isDone() && !readyFuture.isCompletedExceptionally();
+    }
+
     /**
      * Get the API instance
      * @return The API instance
@@ -94,12 +364,36 @@ public class TwitchBattleAPI {
 
     /**
      * Get the database manager
-     * @return The database manager
+     * @return The database manager, or null if local storage is used
      */
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
 
+    /**
+     * Get the storage that teams, players and points are persisted in
+     * @return The storage
+     */
+    public StorageBackend getStorage() {
+        return storage;
+    }
+
+    /**
+     * Get the detector for storage calls on the server thread
+     * @return The detector, or null if it is not enabled
+     */
+    public BlockingCallDetector getBlockingDetector() {
+        return blockingDetector;
+    }
+
+    /**
+     * Check whether data is stored in local files instead of MongoDB
+     * @return True if local storage is configured
+     */
+    public boolean isLocalStorage() {
+        return plugin.getConfig().getString("storage.type", "mongodb").equalsIgnoreCase("local");
+    }
+
     /**
      * Get the point system
      * @return The point system
@@ -124,12 +418,74 @@ public class TwitchBattleAPI {
         return displayUtils;
     }
 
+    /**
+     * Get the players that are known to exist in the storage
+     * @return The known players
+     */
+    public KnownPlayers getKnownPlayers() {
+        return knownPlayers;
+    }
+
+    /**
+     * Get the executor that runs the asynchronous API methods on virtual threads
+     * @return The async executor
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Get an executor that runs tasks on the server thread, e.g. to handle the result
+     * of an asynchronous call: {@code future.thenAcceptAsync(result -> ..., api.getMainThreadExecutor())}
+     * @return The main thread executor
+     */
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Run a task on the async executor
+     * @param task The task
+     * @param <T> The result type
+     * @return Future with the result of the task
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        return asyncExecutor.supply(task);
+    }
+
     /**
      * Shutdown the API properly
      */
     public void shutdown() {
-        if (databaseManager != null) {
-            databaseManager.disconnect();
+        if (changeSubscriber != null) {
+            changeSubscriber.stop();
+        }
+
+        // Report before the final writes, which are expected to block
+        if (blockingDetector != null) {
+            blockingDetector.logReport(10);
+        }
+
+        // Let running asynchronous calls finish first, their changes are part of the final write
+        if (asyncExecutor != null) {
+            try {
+                if (!asyncExecutor.shutdown(10, TimeUnit.SECONDS)) {
+                    plugin.getLogger().warning("[TwitchBattleAPI] Asynchronous calls did not finish in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Write pending point changes before the storage is closed
+        if (pointSystem != null) {
+            pointSystem.shutdown();
+        }
+
+        writeSnapshot();
+
+        if (storage != null) {
+            storage.close();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+package org.emrage.twitchbattleapi.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.WriteConcern;
+import com.mongodb.event.ConnectionPoolListener;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Treibereinstellungen für MongoDB
+ * Diese Klasse verwaltet Connection-Pool, Timeouts, Kompression und Write Concern.
+ * Die Verbindungsdaten selbst bleiben in {@link DatabaseConfig}.
+ */
+public class DatabaseSettings {
+    private int maxPoolSize = 20;
+    private int minPoolSize = 0;
+    private long maxWaitTime = 2000L;
+    private long connectTimeout = 5000L;
+    private long socketTimeout = 0L;
+    private long serverSelectionTimeout = 5000L;
+    private List<String> compressors = List.of("zstd", "snappy", "zlib");
+    // Leer: der Write Concern des Servers bzw. Connection-Strings gilt
+    private String writeConcern = null;
+    private long writeTimeout = 0L;
+    private boolean retryWrites = true;
+    private boolean retryReads = true;
+
+    /**
+     * Liest die Einstellungen aus der Konfiguration, fehlende Werte behalten ihren Standard
+     * @param section The database section of config.yml, may be null
+     * @return The settings
+     */
+    public static DatabaseSettings fromConfig(ConfigurationSection section) {
+        DatabaseSettings settings = new DatabaseSettings();
+        if (section == null) {
+            return settings;
+        }
+
+        settings.maxPoolSize = section.getInt("pool.maxSize", settings.maxPoolSize);
+        settings.minPoolSize = section.getInt("pool.minSize", settings.minPoolSize);
+        settings.maxWaitTime = section.getLong("pool.maxWaitTime", settings.maxWaitTime);
+        settings.connectTimeout = section.getLong("connectTimeout", settings.connectTimeout);
+        settings.socketTimeout = section.getLong("socketTimeout", settings.socketTimeout);
+        settings.serverSelectionTimeout = section.getLong("serverSelectionTimeout", settings.serverSelectionTimeout);
+        if (section.isSet("compressors")) {
+            settings.compressors = section.getStringList("compressors");
+        }
+        settings.writeConcern = section.getString("writeConcern", settings.writeConcern);
+        settings.writeTimeout = section.getLong("writeTimeout", settings.writeTimeout);
+        settings.retryWrites = section.getBoolean("retryWrites", settings.retryWrites);
+        settings.retryReads = section.getBoolean("retryReads", settings.retryReads);
+        return settings;
+    }
+
+    /**
+     * Überträgt die Einstellungen auf die Client-Einstellungen
+     * @param builder The client settings builder, after the connection string was applied
+     * @param poolListener Listener for connection pool events, may be null
+     * @return The builder
+     */
+    public MongoClientSettings.Builder apply(MongoClientSettings.Builder builder, ConnectionPoolListener poolListener) {
+        builder.applyToConnectionPoolSettings(pool -> {
+            pool.maxSize(getMaxPoolSize())
+                    .minSize(Math.min(Math.max(0, minPoolSize), getMaxPoolSize()))
+                    .maxWaitTime(maxWaitTime, TimeUnit.MILLISECONDS);
+            if (poolListener != null) {
+                pool.addConnectionPoolListener(poolListener);
+            }
+        });
+        builder.applyToSocketSettings(socket -> socket
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(socketTimeout, TimeUnit.MILLISECONDS));
+        builder.applyToClusterSettings(cluster -> cluster
+                .serverSelectionTimeout(serverSelectionTimeout, TimeUnit.MILLISECONDS));
+
+        List<MongoCompressor> compressorList = createCompressors();
+        if (!compressorList.isEmpty()) {
+            builder.compressorList(compressorList);
+        }
+
+        WriteConcern concern = createWriteConcern();
+        if (concern != null) {
+            builder.writeConcern(concern);
+        }
+        return builder.retryWrites(retryWrites).retryReads(retryReads);
+    }
+
+    /**
+     * Erstellt die konfigurierten Kompressoren.
+     * zstd und snappy brauchen zstd-jni bzw. snappy-java im Classpath und werden sonst übersprungen.
+     */
+    private List<MongoCompressor> createCompressors() {
+        Logger logger = Logger.getLogger("TwitchBattleAPI");
+        List<MongoCompressor> result = new ArrayList<>();
+        for (String name : compressors) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "zstd" -> {
+                    if (isAvailable("com.github.luben.zstd.Zstd")) {
+                        result.add(MongoCompressor.createZstdCompressor());
+                    } else {
+                        logger.fine("zstd compression skipped, zstd-jni is not on the classpath");
+                    }
+                }
+                case "snappy" -> {
+                    if (isAvailable("org.xerial.snappy.Snappy")) {
+                        result.add(MongoCompressor.createSnappyCompressor());
+                    } else {
+                        logger.fine("snappy compression skipped, snappy-java is not on the classpath");
+                    }
+                }
+                case "zlib" -> result.add(MongoCompressor.createZlibCompressor());
+                default -> logger.warning("Unknown compressor in database.compressors: " + name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Erstellt den Write Concern aus "majority" oder einer Anzahl Knoten
+     */
+    private WriteConcern createWriteConcern() {
+        if (writeConcern == null || writeConcern.isBlank()) {
+            return null;
+        }
+
+        String value = writeConcern.trim().toLowerCase(Locale.ROOT);
+        if (value.startsWith("w:")) {
+            value = value.substring(2).trim();
+        }
+
+        WriteConcern concern;
+        if (value.equals("majority")) {
+            concern = WriteConcern.MAJORITY;
+        } else {
+            try {
+                concern = new WriteConcern(Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                // Custom tag sets are passed through by name
+                concern = new WriteConcern(writeConcern.trim());
+            }
+        }
+        return writeTimeout > 0 ? concern.withWTimeout(writeTimeout, TimeUnit.MILLISECONDS) : concern;
+    }
+
+    private static boolean isAvailable(String className) {
+        try {
+            Class.forName(className, false, DatabaseSettings.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gibt die maximale Größe des Connection-Pools zurück
+     * @return Maximum pool size
+     */
+    public int getMaxPoolSize() {
+        return Math.max(1, maxPoolSize);
+    }
+
+    /**
+     * Gibt die minimale Größe des Connection-Pools zurück
+     * @return Minimum pool size
+     */
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    /**
+     * Gibt die maximale Wartezeit auf eine Verbindung zurück
+     * @return Maximum wait time in milliseconds
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Gibt den Verbindungs-Timeout zurück
+     * @return Connect timeout in milliseconds
+     */
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Gibt den Socket-Timeout zurück
+     * @return Socket read timeout in milliseconds, 0 for none
+     */
+    public long getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * Gibt den Timeout für die Serverauswahl zurück
+     * @return Server selection timeout in milliseconds
+     */
+    public long getServerSelectionTimeout() {
+        return serverSelectionTimeout;
+    }
+
+    /**
+     * Gibt die konfigurierten Kompressoren zurück
+     * @return Compressor names in order of preference
+     */
+    public List<String> getCompressors() {
+        return compressors;
+    }
+
+    /**
+     * Gibt den Write Concern zurück
+     * @return Write concern, "majority" or a number of nodes, null if not set
+     */
+    public String getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * Gibt zurück, ob Schreibvorgänge wiederholt werden
+     * @return True if retryable writes are enabled
+     */
+    public boolean isRetryWrites() {
+        return retryWrites;
+    }
+
+    /**
+     * Gibt zurück, ob Lesevorgänge wiederholt werden
+     * @return True if retryable reads are enabled
+     */
+    public boolean isRetryReads() {
+        return retryReads;
+    }
+}
@@ -0,0 +1,361 @@
+package org.emrage.twitchbattleapi.database;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers changes that other servers make to the database.
+ * Changes are read from a change stream, whose resume token is stored in a file
+ * so that a restart continues where the last run stopped. Standalone servers
+ * don't support change streams; there, documents are polled by their
+ * last_updated field and deletes are found by comparing document IDs.
+ */
+public class ChangeStreamSubscriber {
+    /**
+     * Receives the changes of the watched collections
+     */
+    public interface ChangeListener {
+        /**
+         * A document was inserted or updated
+         * @param collection Collection name
+         * @param document The full document
+         */
+        void onUpsert(String collection, Document document);
+
+        /**
+         * A document was deleted
+         * @param collection Collection name
+         * @param id The _id of the deleted document
+         */
+        void onDelete(String collection, Object id);
+
+        /**
+         * The complete set of document IDs of a collection, documents with other IDs were deleted.
+         * Only called when changes are polled.
+         * @param collection Collection name
+         * @param ids The _id of every document in the collection
+         */
+        void onReconcile(String collection, Set<Object> ids);
+
+        /**
+         * Whether deletes in a collection matter. Polling only looks for deletes in these collections.
+         * @param collection Collection name
+         * @return True if deletes should be reported
+         */
+        default boolean tracksDeletes(String collection) {
+            return true;
+        }
+    }
+
+    // Error codes of the server
+    private static final int NOT_A_REPLICA_SET = 40573;
+    private static final int HISTORY_LOST = 286;
+    private static final int FATAL_ERROR = 280;
+
+    // last_updated is set by each server's clock, so polling looks back a bit further
+    private static final long CLOCK_SKEW_MARGIN = 5000L;
+    private static final long TOKEN_SAVE_INTERVAL = 5000L;
+    private static final long RETRY_DELAY = 5000L;
+
+    private final DatabaseManager databaseManager;
+    private final List<String> collections;
+    private final ChangeListener listener;
+    private final File tokenFile;
+    private final long pollInterval;
+    private final long reconcileInterval;
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+
+    private volatile boolean running;
+    private Thread thread;
+    private BsonDocument resumeToken;
+    private long lastEventTime;
+    private boolean tokenChanged;
+    private long tokenSavedAt;
+
+    /**
+     * Create a new change stream subscriber
+     * @param databaseManager The database manager
+     * @param collections The collections to watch
+     * @param listener Receives the changes
+     * @param tokenFile File to store the resume token in
+     * @param pollInterval Time between two polls in milliseconds, if change streams are not supported
+     * @param reconcileInterval Time between two deletion checks in milliseconds, if change streams are not supported
+     */
+    public ChangeStreamSubscriber(DatabaseManager databaseManager, List<String> collections, ChangeListener listener,
+                                  File tokenFile, long pollInterval, long reconcileInterval) {
+        this.databaseManager = databaseManager;
+        this.collections = List.copyOf(collections);
+        this.listener = listener;
+        this.tokenFile = tokenFile;
+        this.pollInterval = Math.max(100L, pollInterval);
+        this.reconcileInterval = Math.max(this.pollInterval, reconcileInterval);
+    }
+
+    /**
+     * Start receiving changes on a background thread
+     * @param loadedAt Time at which the caches were loaded, changes since then are caught up
+     */
+    public synchronized void start(long loadedAt) {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        lastEventTime = loadedAt;
+        loadToken();
+
+        thread = new Thread(this::run, "TwitchBattleAPI-ChangeStream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop receiving changes and store the resume token
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void run() {
+        // Changes made between loading and now: replayed from the stored token, or polled
+        boolean catchUp = resumeToken == null;
+
+        while (running) {
+            try {
+                watch(catchUp);
+                catchUp = false;
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == NOT_A_REPLICA_SET) {
+                    logger.info("Change streams are not supported by the database, polling for changes every " + pollInterval + " ms");
+                    poll();
+                    return;
+                }
+                if (e.getErrorCode() == HISTORY_LOST || e.getErrorCode() == FATAL_ERROR) {
+                    // The stored position is gone, start over and poll what was missed
+                    logger.warning("Change stream can't be resumed, catching up from " + new Date(lastEventTime));
+                    resumeToken = null;
+                    deleteToken();
+                    catchUp = true;
+                    continue;
+                }
+                logger.log(Level.SEVERE, "Change stream failed, retrying", e);
+                sleep(RETRY_DELAY);
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                logger.log(Level.SEVERE, "Change stream failed, retrying", e);
+                sleep(RETRY_DELAY);
+            }
+        }
+        saveToken();
+    }
+
+    /**
+     * Read the change stream until stopped
+     * @param catchUp Whether to poll changes since the last event once the stream is open
+     */
+    private void watch(boolean catchUp) {
+        ChangeStreamIterable<Document> iterable = databaseManager.getDatabase()
+                .watch(List.of(Aggregates.match(Filters.in("ns.coll", collections))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (resumeToken != null) {
+            iterable = iterable.resumeAfter(resumeToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = iterable.cursor()) {
+            if (catchUp) {
+                // The stream is open, so nothing between the poll and the stream is lost
+                catchUp(lastEventTime - CLOCK_SKEW_MARGIN);
+                reconcile();
+            }
+
+            while (running) {
+                ChangeStreamDocument<Document> event = cursor.tryNext();
+                if (event != null) {
+                    dispatch(event);
+                }
+
+                BsonDocument token = cursor.getResumeToken();
+                if (token != null && !token.equals(resumeToken)) {
+                    resumeToken = token;
+                    tokenChanged = true;
+                }
+                if (tokenChanged && System.currentTimeMillis() - tokenSavedAt >= TOKEN_SAVE_INTERVAL) {
+                    saveToken();
+                }
+            }
+        }
+    }
+
+    private void dispatch(ChangeStreamDocument<Document> event) {
+        String collection = event.getNamespace() != null ? event.getNamespace().getCollectionName() : null;
+        if (collection == null || event.getOperationType() == null) {
+            return;
+        }
+
+        switch (event.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                // The document can already be deleted again when it is looked up
+                if (event.getFullDocument() != null) {
+                    listener.onUpsert(collection, event.getFullDocument());
+                }
+            }
+            case DELETE -> listener.onDelete(collection, toId(event.getDocumentKey().get("_id")));
+            default -> {
+                // Drops and renames are not made by this API
+            }
+        }
+        lastEventTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Poll for changes until stopped
+     */
+    private void poll() {
+        long lastPoll = lastEventTime;
+        long lastReconcile = 0L;
+
+        while (running) {
+            long now = System.currentTimeMillis();
+            try {
+                catchUp(lastPoll - CLOCK_SKEW_MARGIN);
+                lastPoll = now;
+                if (now - lastReconcile >= reconcileInterval) {
+                    reconcile();
+                    lastReconcile = now;
+                }
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Failed to poll for changes", e);
+            }
+            sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Deliver all documents changed since a point in time
+     * @param since Time in milliseconds
+     */
+    private void catchUp(long since) {
+        Document filter = new Document("last_updated", new Document("$gte", new Date(since)));
+        for (String collection : collections) {
+            databaseManager.forEach(collection, filter, null, doc -> listener.onUpsert(collection, doc));
+        }
+    }
+
+    /**
+     * Deliver the IDs of all documents, so that deleted documents can be found
+     */
+    private void reconcile() {
+        Document projection = new Document("_id", 1);
+        for (String collection : collections) {
+            if (!listener.tracksDeletes(collection)) {
+                continue;
+            }
+
+            Set<Object> ids = new HashSet<>();
+            if (databaseManager.forEach(collection, new Document(), projection, doc -> ids.add(doc.get("_id")))) {
+                listener.onReconcile(collection, ids);
+            }
+        }
+    }
+
+    /**
+     * Convert a BSON _id to the type used in documents
+     */
+    private static Object toId(BsonValue id) {
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        if (id.isInt32()) {
+            return id.asInt32().getValue();
+        }
+        if (id.isInt64()) {
+            return id.asInt64().getValue();
+        }
+        return id;
+    }
+
+    private void loadToken() {
+        if (!tokenFile.isFile()) {
+            return;
+        }
+        try {
+            resumeToken = BsonDocument.parse(Files.readString(tokenFile.toPath(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Ignoring unreadable change stream resume token", e);
+        }
+    }
+
+    private void saveToken() {
+        tokenSavedAt = System.currentTimeMillis();
+        if (resumeToken == null || !tokenChanged) {
+            return;
+        }
+
+        try {
+            // Write to a temporary file first, so a crash can't leave a broken token behind
+            File parent = tokenFile.getAbsoluteFile().getParentFile();
+            Files.createDirectories(parent.toPath());
+            File temp = new File(parent, tokenFile.getName() + ".tmp");
+            Files.writeString(temp.toPath(), resumeToken.toJson(), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), tokenFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tokenChanged = false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to store change stream resume token", e);
+        }
+    }
+
+    private void deleteToken() {
+        try {
+            Files.deleteIfExists(tokenFile.toPath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete change stream resume token", e);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // Interrupted by stop()
+        }
+    }
+}
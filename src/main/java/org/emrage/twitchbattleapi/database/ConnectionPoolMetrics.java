@@ -0,0 +1,155 @@
+package org.emrage.twitchbattleapi.database;
+
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClearedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects connection pool statistics from the driver's pool events
+ */
+public class ConnectionPoolMetrics implements ConnectionPoolListener {
+    // The sync driver checks out a connection on the calling thread
+    private final ThreadLocal<Long> checkOutStart = new ThreadLocal<>();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger checkedOutConnections = new AtomicInteger();
+    private final AtomicInteger pendingCheckOuts = new AtomicInteger();
+    private final AtomicLong checkOuts = new AtomicLong();
+    private final AtomicLong checkOutFailures = new AtomicLong();
+    private final AtomicLong checkOutTimeouts = new AtomicLong();
+    private final AtomicLong poolClears = new AtomicLong();
+    private final AtomicLong totalCheckOutNanos = new AtomicLong();
+    private final AtomicLong maxCheckOutNanos = new AtomicLong();
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        openConnections.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        openConnections.decrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        pendingCheckOuts.incrementAndGet();
+        checkOutStart.set(System.nanoTime());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        pendingCheckOuts.decrementAndGet();
+        checkedOutConnections.incrementAndGet();
+        checkOuts.incrementAndGet();
+
+        Long start = checkOutStart.get();
+        if (start != null) {
+            checkOutStart.remove();
+            long waited = System.nanoTime() - start;
+            totalCheckOutNanos.addAndGet(waited);
+            maxCheckOutNanos.accumulateAndGet(waited, Math::max);
+        }
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        pendingCheckOuts.decrementAndGet();
+        checkOutFailures.incrementAndGet();
+        if (event.getReason() == ConnectionCheckOutFailedEvent.Reason.TIMEOUT) {
+            checkOutTimeouts.incrementAndGet();
+        }
+        checkOutStart.remove();
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        checkedOutConnections.decrementAndGet();
+    }
+
+    @Override
+    public void connectionPoolCleared(ConnectionPoolClearedEvent event) {
+        poolClears.incrementAndGet();
+    }
+
+    /**
+     * Get the number of open connections
+     * @return The number of open connections
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Get the number of connections currently in use
+     * @return The number of checked out connections
+     */
+    public int getCheckedOutConnections() {
+        return checkedOutConnections.get();
+    }
+
+    /**
+     * Get the number of threads waiting for a connection
+     * @return The number of pending check outs
+     */
+    public int getPendingCheckOuts() {
+        return pendingCheckOuts.get();
+    }
+
+    /**
+     * Get the number of successful check outs
+     * @return The number of check outs
+     */
+    public long getCheckOutCount() {
+        return checkOuts.get();
+    }
+
+    /**
+     * Get the number of failed check outs
+     * @return The number of failed check outs
+     */
+    public long getCheckOutFailureCount() {
+        return checkOutFailures.get();
+    }
+
+    /**
+     * Get the number of check outs that failed because the pool was exhausted
+     * @return The number of timed out check outs
+     */
+    public long getCheckOutTimeoutCount() {
+        return checkOutTimeouts.get();
+    }
+
+    /**
+     * Get the number of times the pool was cleared, e.g. after a failover
+     * @return The number of pool clears
+     */
+    public long getPoolClearCount() {
+        return poolClears.get();
+    }
+
+    /**
+     * Get the average time to check out a connection
+     * @return The average check out time in milliseconds
+     */
+    public double getAverageCheckOutMillis() {
+        long count = checkOuts.get();
+        return count == 0 ? 0.0 : totalCheckOutNanos.get() / (count * 1_000_000.0);
+    }
+
+    /**
+     * Get the longest time to check out a connection
+     * @return The maximum check out time in milliseconds
+     */
+    public double getMaxCheckOutMillis() {
+        return maxCheckOutNanos.get() / 1_000_000.0;
+    }
+}
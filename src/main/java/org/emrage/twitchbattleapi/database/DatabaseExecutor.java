@@ -0,0 +1,203 @@
+package org.emrage.twitchbattleapi.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking database calls on virtual threads.
+ * The number of calls running at the same time is limited by a semaphore that
+ * matches the connection pool size, so a burst of operations waits here
+ * instead of piling up on the driver's connection pool.
+ */
+public class DatabaseExecutor implements Executor {
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("TwitchBattleAPI-DB-", 0).factory());
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final long timeoutMillis;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Create a new database executor
+     * @param maxConcurrency Maximum number of operations running at the same time
+     * @param timeoutMillis Maximum time from submitting an operation until it has finished
+     */
+    public DatabaseExecutor(int maxConcurrency, long timeoutMillis) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.timeoutMillis = Math.max(1L, timeoutMillis);
+        this.permits = new Semaphore(this.maxConcurrency, true);
+    }
+
+    /**
+     * Run an operation asynchronously.
+     * The future fails with a {@link TimeoutException} if the operation did not
+     * finish within the timeout, counted from this call. An operation that only
+     * gets a slot after its future has failed is not run at all, so a caller that
+     * sees the timeout can retry it. An operation that was already running can
+     * still complete in the database after the future failed.
+     * @param operation The operation
+     * @param <T> The result type
+     * @return Future with the result of the operation
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        threads.execute(() -> {
+            if (future.isDone() || !acquire(true, deadline - System.nanoTime())) {
+                timedOut(future);
+                return;
+            }
+            try {
+                // The future may have timed out while this operation waited for a slot
+                if (future.isDone() || deadline - System.nanoTime() <= 0) {
+                    timedOut(future);
+                    return;
+                }
+                future.complete(operation.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                permits.release();
+            }
+        });
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void timedOut(CompletableFuture<?> future) {
+        timeouts.incrementAndGet();
+        future.completeExceptionally(new TimeoutException("No database connection available within " + timeoutMillis + "ms"));
+    }
+
+    /**
+     * Run a task on a virtual thread once a slot is free. Unlike {@link #supply},
+     * the task waits for a slot without timeout, since it has no way to report a failure.
+     * @param task The task
+     */
+    @Override
+    public void execute(Runnable task) {
+        threads.execute(() -> {
+            if (!acquire(false, 0L)) {
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Wait for a slot and record the wait time
+     * @param timed Whether to give up after the timeout
+     * @param timeoutNanos Maximum time to wait if timed
+     * @return True if a slot was acquired
+     */
+    private boolean acquire(boolean timed, long timeoutNanos) {
+        long start = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            boolean acquired;
+            if (timed) {
+                acquired = timeoutNanos > 0 && permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+            } else {
+                permits.acquire();
+                acquired = true;
+            }
+            if (acquired) {
+                operations.incrementAndGet();
+            }
+            return acquired;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+    }
+
+    /**
+     * Stop accepting operations and wait for running ones to finish
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return True if all operations finished
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        threads.shutdown();
+        return threads.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Get the maximum number of operations running at the same time
+     * @return The concurrency limit
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Get the number of operations currently running
+     * @return The number of running operations
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Get the number of operations waiting for a free slot
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Get the number of operations that have been started
+     * @return The number of operations
+     */
+    public long getOperationCount() {
+        return operations.get();
+    }
+
+    /**
+     * Get the number of operations that gave up waiting for a free slot
+     * @return The number of timed out operations
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Get the average time operations waited for a free slot
+     * @return The average wait time in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long count = operations.get() + timeouts.get();
+        return count == 0 ? 0.0 : totalWaitNanos.get() / (count * 1_000_000.0);
+    }
+
+    /**
+     * Get the longest time an operation waited for a free slot
+     * @return The maximum wait time in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+}
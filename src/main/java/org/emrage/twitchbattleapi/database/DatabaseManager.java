@@ -1,17 +1,31 @@
 package org.emrage.twitchbattleapi.database;
 
 import com.mongodb.ConnectionString;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import org.bson.Document;
 import org.emrage.twitchbattleapi.config.DatabaseConfig;
+import org.emrage.twitchbattleapi.config.DatabaseSettings;
+import org.emrage.twitchbattleapi.database.DatabaseMetrics.Operation;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,6 +36,12 @@ public class DatabaseManager {
     private String connectionString;
     private MongoClient mongoClient;
     private MongoDatabase database;
+    private int batchSize = 1000;
+    private DatabaseSettings settings = new DatabaseSettings();
+    private long operationTimeout = 10000L;
+    private DatabaseExecutor executor;
+    private final ConnectionPoolMetrics poolMetrics = new ConnectionPoolMetrics();
+    private final DatabaseMetrics metrics = new DatabaseMetrics();
     private final Logger logger = Logger.getLogger("TwitchBattleAPI");
 
     /**
@@ -47,18 +67,45 @@ public class DatabaseManager {
         this.connectionString = connectionString;
     }
 
+    /**
+     * Set the number of documents fetched per round trip when streaming
+     * @param batchSize The batch size
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the driver settings. The number of asynchronous operations running at the
+     * same time is limited to the pool size. Must be called before {@link #connect()}.
+     * @param settings The driver settings
+     */
+    public void setSettings(DatabaseSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Set the time after which an asynchronous operation fails. Must be called before {@link #connect()}.
+     * @param operationTimeout The timeout in milliseconds
+     */
+    public void setOperationTimeout(long operationTimeout) {
+        this.operationTimeout = operationTimeout;
+    }
+
     /**
      * Connect to the database
      */
     public void connect() {
+        executor = new DatabaseExecutor(settings.getMaxPoolSize(), operationTimeout);
+
         try {
             // Set up MongoDB connection
             ConnectionString connString = new ConnectionString(connectionString);
-            MongoClientSettings settings = MongoClientSettings.builder()
-                    .applyConnectionString(connString)
-                    .build();
+            MongoClientSettings.Builder builder = MongoClientSettings.builder()
+                    .applyConnectionString(connString);
+            MongoClientSettings clientSettings = settings.apply(builder, poolMetrics).build();
 
-            mongoClient = MongoClients.create(settings);
+            mongoClient = MongoClients.create(clientSettings);
             database = mongoClient.getDatabase(DatabaseConfig.getDatabaseName());
 
             logger.info("Successfully connected to MongoDB database");
@@ -71,6 +118,17 @@ public class DatabaseManager {
      * Disconnect from the database
      */
     public void disconnect() {
+        metrics.disableJmx();
+
+        // Let running asynchronous operations finish before the client is closed
+        try {
+            if (executor != null && !executor.shutdown(10, TimeUnit.SECONDS)) {
+                logger.warning("Asynchronous database operations did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
         try {
             if (mongoClient != null) {
                 mongoClient.close();
@@ -103,10 +161,17 @@ public class DatabaseManager {
 
             // Create indexes for better performance
             database.getCollection("teams").createIndex(new Document("name", 1));
-            database.getCollection("players").createIndex(new Document("uuid", 1));
             database.getCollection("players").createIndex(new Document("team_id", 1));
-            database.getCollection("points").createIndex(new Document("team_id", 1));
-            database.getCollection("points").createIndex(new Document("player_uuid", 1));
+            // Changes since a point in time are read on warm starts and when polling for changes
+            database.getCollection("players").createIndex(new Document("last_updated", 1));
+            database.getCollection("points").createIndex(new Document("last_updated", 1));
+
+            // Unique indexes, so that concurrent upserts can't create duplicate documents.
+            // Team and player points share a collection, so each index only covers its own documents.
+            createUniqueIndex("teams", "id");
+            createUniqueIndex("players", "uuid");
+            createUniqueIndex("points", "team_id");
+            createUniqueIndex("points", "player_uuid");
 
             logger.info("Successfully initialized MongoDB collections and indices");
         } catch (Exception e) {
@@ -114,6 +179,34 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Create a unique index on a field, replacing an existing non-unique index on it.
+     * Falls back to a non-unique index if the collection already contains duplicates.
+     * @param collection Collection name
+     * @param field The indexed field
+     */
+    private void createUniqueIndex(String collection, String field) {
+        MongoCollection<Document> mongoCollection = database.getCollection(collection);
+        Document keys = new Document(field, 1);
+
+        for (Document index : mongoCollection.listIndexes()) {
+            Document indexKeys = index.get("key", Document.class);
+            if (indexKeys != null && indexKeys.keySet().equals(keys.keySet()) && !index.getBoolean("unique", false)) {
+                mongoCollection.dropIndex(index.getString("name"));
+            }
+        }
+
+        try {
+            mongoCollection.createIndex(keys, new IndexOptions()
+                    .unique(true)
+                    .partialFilterExpression(new Document(field, new Document("$exists", true))));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Could not create unique index on " + collection + "." + field
+                    + ", remove the duplicate documents and restart", e);
+            mongoCollection.createIndex(keys);
+        }
+    }
+
     /**
      * Find documents in a collection
      * @param collection Collection name
@@ -121,14 +214,72 @@ public class DatabaseManager {
      * @return List of matching documents
      */
     public List<Document> find(String collection, Document filter) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
             List<Document> results = new ArrayList<>();
             MongoCollection<Document> coll = database.getCollection(collection);
             coll.find(filter).into(results);
+            success = true;
             return results;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error executing find query", e);
             return new ArrayList<>();
+        } finally {
+            metrics.record(collection, Operation.FIND, start, success, filter);
+        }
+    }
+
+    /**
+     * Find documents in a collection, returning only some fields
+     * @param collection Collection name
+     * @param filter Filter document
+     * @param projection Fields to include or exclude
+     * @return List of matching documents
+     */
+    public List<Document> find(String collection, Document filter, Document projection) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<Document> results = new ArrayList<>();
+            database.getCollection(collection).find(filter).projection(projection).into(results);
+            success = true;
+            return results;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error executing find query", e);
+            return new ArrayList<>();
+        } finally {
+            metrics.record(collection, Operation.FIND, start, success, filter);
+        }
+    }
+
+    /**
+     * Stream documents of a collection through a cursor without collecting them in a list.
+     * The recorded duration includes the time spent in the action.
+     * @param collection Collection name
+     * @param filter Filter document
+     * @param projection Fields to include or exclude
+     * @param action Action to run for every document
+     * @return True if all documents were read, false otherwise
+     */
+    public boolean forEach(String collection, Document filter, Document projection, Consumer<Document> action) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try (MongoCursor<Document> cursor = database.getCollection(collection)
+                .find(filter)
+                .projection(projection)
+                .batchSize(batchSize)
+                .cursor()) {
+            while (cursor.hasNext()) {
+                action.accept(cursor.next());
+            }
+            success = true;
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error streaming documents from " + collection, e);
+            return false;
+        } finally {
+            metrics.record(collection, Operation.FOR_EACH, start, success, filter);
         }
     }
 
@@ -139,11 +290,17 @@ public class DatabaseManager {
      * @return Matching document or null
      */
     public Document findOne(String collection, Document filter) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
-            return database.getCollection(collection).find(filter).first();
+            Document result = database.getCollection(collection).find(filter).first();
+            success = true;
+            return result;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error executing findOne query", e);
             return null;
+        } finally {
+            metrics.record(collection, Operation.FIND_ONE, start, success, filter);
         }
     }
 
@@ -154,12 +311,17 @@ public class DatabaseManager {
      * @return True if successful, false otherwise
      */
     public boolean insertOne(String collection, Document document) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
             database.getCollection(collection).insertOne(document);
+            success = true;
             return true;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error inserting document", e);
             return false;
+        } finally {
+            metrics.record(collection, Operation.INSERT_ONE, start, success, null);
         }
     }
 
@@ -171,12 +333,85 @@ public class DatabaseManager {
      * @return True if successful, false otherwise
      */
     public boolean updateOne(String collection, Document filter, Document update) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
             database.getCollection(collection).updateOne(filter, new Document("$set", update));
+            success = true;
             return true;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error updating document", e);
             return false;
+        } finally {
+            metrics.record(collection, Operation.UPDATE_ONE, start, success, filter);
+        }
+    }
+
+    /**
+     * Update all documents matching a filter
+     * @param collection Collection name
+     * @param filter Filter to find the documents
+     * @param update Update operations
+     * @return True if successful, false otherwise
+     */
+    public boolean updateMany(String collection, Document filter, Document update) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            database.getCollection(collection).updateMany(filter, new Document("$set", update));
+            success = true;
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error updating documents", e);
+            return false;
+        } finally {
+            metrics.record(collection, Operation.UPDATE_MANY, start, success, filter);
+        }
+    }
+
+    /**
+     * Update a document, or insert it if no document matches the filter
+     * @param collection Collection name
+     * @param filter Filter to find the document, its equality conditions are part of an inserted document
+     * @param update Update document with operators, e.g. $set and $setOnInsert
+     * @return True if successful, false otherwise
+     */
+    public boolean upsert(String collection, Document filter, Document update) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            database.getCollection(collection).updateOne(filter, update, new UpdateOptions().upsert(true));
+            success = true;
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error upserting document", e);
+            return false;
+        } finally {
+            metrics.record(collection, Operation.UPSERT, start, success, filter);
+        }
+    }
+
+    /**
+     * Update a document and return it in a single round trip
+     * @param collection Collection name
+     * @param filter Filter to find the document
+     * @param update Update document with operators
+     * @param upsert Whether to insert the document if no document matches the filter
+     * @return The document after the update, or null if no document matched or the update failed
+     */
+    public Document findOneAndUpdate(String collection, Document filter, Document update, boolean upsert) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Document result = database.getCollection(collection).findOneAndUpdate(filter, update,
+                    new FindOneAndUpdateOptions().upsert(upsert).returnDocument(ReturnDocument.AFTER));
+            success = true;
+            return result;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error executing findOneAndUpdate", e);
+            return null;
+        } finally {
+            metrics.record(collection, Operation.FIND_ONE_AND_UPDATE, start, success, filter);
         }
     }
 
@@ -187,15 +422,213 @@ public class DatabaseManager {
      * @return True if successful, false otherwise
      */
     public boolean deleteOne(String collection, Document filter) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
             database.getCollection(collection).deleteOne(filter);
+            success = true;
             return true;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error deleting document", e);
             return false;
+        } finally {
+            metrics.record(collection, Operation.DELETE_ONE, start, success, filter);
         }
     }
 
+    /**
+     * Delete all documents matching a filter
+     * @param collection Collection name
+     * @param filter Filter to find the documents
+     * @return True if successful, false otherwise
+     */
+    public boolean deleteMany(String collection, Document filter) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            database.getCollection(collection).deleteMany(filter);
+            success = true;
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error deleting documents", e);
+            return false;
+        } finally {
+            metrics.record(collection, Operation.DELETE_MANY, start, success, filter);
+        }
+    }
+
+    /**
+     * Execute multiple write operations in a single request
+     * @param collection Collection name
+     * @param requests Write operations
+     * @param ordered Whether to stop at the first failed operation
+     * @return Indices of the operations that were not applied, empty if all succeeded
+     */
+    public List<Integer> bulkWrite(String collection, List<? extends WriteModel<Document>> requests, boolean ordered) {
+        List<Integer> failed = new ArrayList<>();
+        if (requests.isEmpty()) {
+            return failed;
+        }
+
+        long start = System.nanoTime();
+        try {
+            database.getCollection(collection).bulkWrite(requests, new BulkWriteOptions().ordered(ordered));
+        } catch (MongoBulkWriteException e) {
+            logger.log(Level.SEVERE, "Error executing bulk write, " + e.getWriteErrors().size() + " of " + requests.size() + " operations failed", e);
+            if (ordered) {
+                // Everything from the first error on was not executed
+                int first = e.getWriteErrors().get(0).getIndex();
+                for (int i = first; i < requests.size(); i++) {
+                    failed.add(i);
+                }
+            } else {
+                for (BulkWriteError error : e.getWriteErrors()) {
+                    failed.add(error.getIndex());
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error executing bulk write", e);
+            for (int i = 0; i < requests.size(); i++) {
+                failed.add(i);
+            }
+        } finally {
+            metrics.record(collection, Operation.BULK_WRITE, start, failed.isEmpty(), requests.size() + " writes");
+        }
+        return failed;
+    }
+
+    /**
+     * Find documents in a collection asynchronously
+     * @param collection Collection name
+     * @param filter Filter document
+     * @return Future with the list of matching documents
+     */
+    public CompletableFuture<List<Document>> findAsync(String collection, Document filter) {
+        return executor.supply(() -> find(collection, filter));
+    }
+
+    /**
+     * Find a single document in a collection asynchronously
+     * @param collection Collection name
+     * @param filter Filter document
+     * @return Future with the matching document or null
+     */
+    public CompletableFuture<Document> findOneAsync(String collection, Document filter) {
+        return executor.supply(() -> findOne(collection, filter));
+    }
+
+    /**
+     * Insert a document into a collection asynchronously
+     * @param collection Collection name
+     * @param document Document to insert
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> insertOneAsync(String collection, Document document) {
+        return executor.supply(() -> insertOne(collection, document));
+    }
+
+    /**
+     * Update a document in a collection asynchronously
+     * @param collection Collection name
+     * @param filter Filter to find the document
+     * @param update Update operations
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> updateOneAsync(String collection, Document filter, Document update) {
+        return executor.supply(() -> updateOne(collection, filter, update));
+    }
+
+    /**
+     * Update all documents matching a filter asynchronously
+     * @param collection Collection name
+     * @param filter Filter to find the documents
+     * @param update Update operations
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> updateManyAsync(String collection, Document filter, Document update) {
+        return executor.supply(() -> updateMany(collection, filter, update));
+    }
+
+    /**
+     * Update or insert a document asynchronously
+     * @param collection Collection name
+     * @param filter Filter to find the document
+     * @param update Update document with operators
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> upsertAsync(String collection, Document filter, Document update) {
+        return executor.supply(() -> upsert(collection, filter, update));
+    }
+
+    /**
+     * Update a document and return it asynchronously
+     * @param collection Collection name
+     * @param filter Filter to find the document
+     * @param update Update document with operators
+     * @param upsert Whether to insert the document if no document matches the filter
+     * @return Future with the document after the update, or null
+     */
+    public CompletableFuture<Document> findOneAndUpdateAsync(String collection, Document filter, Document update, boolean upsert) {
+        return executor.supply(() -> findOneAndUpdate(collection, filter, update, upsert));
+    }
+
+    /**
+     * Delete a document from a collection asynchronously
+     * @param collection Collection name
+     * @param filter Filter to find the document
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> deleteOneAsync(String collection, Document filter) {
+        return executor.supply(() -> deleteOne(collection, filter));
+    }
+
+    /**
+     * Delete all documents matching a filter asynchronously
+     * @param collection Collection name
+     * @param filter Filter to find the documents
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> deleteManyAsync(String collection, Document filter) {
+        return executor.supply(() -> deleteMany(collection, filter));
+    }
+
+    /**
+     * Execute multiple write operations in a single request asynchronously
+     * @param collection Collection name
+     * @param requests Write operations
+     * @param ordered Whether to stop at the first failed operation
+     * @return Future with the indices of the operations that were not applied
+     */
+    public CompletableFuture<List<Integer>> bulkWriteAsync(String collection, List<? extends WriteModel<Document>> requests, boolean ordered) {
+        return executor.supply(() -> bulkWrite(collection, requests, ordered));
+    }
+
+    /**
+     * Get the executor that runs asynchronous operations.
+     * Every task runs on its own virtual thread, so blocking calls don't tie up platform threads,
+     * and the number of running tasks is limited to the connection pool size.
+     * @return The executor
+     */
+    public DatabaseExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get the connection pool statistics
+     * @return The pool metrics
+     */
+    public ConnectionPoolMetrics getPoolMetrics() {
+        return poolMetrics;
+    }
+
+    /**
+     * Get the timing and error statistics of all operations
+     * @return The operation metrics
+     */
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Execute SQL-style update (compatibility with old code)
      * @param sql The SQL statement with placeholders (ignored)
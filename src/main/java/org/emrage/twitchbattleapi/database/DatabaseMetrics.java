@@ -0,0 +1,203 @@
+package org.emrage.twitchbattleapi.database;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Times every database operation by collection and operation, logs slow operations
+ * and publishes the statistics over JMX and to registered metrics registries.
+ * Recording an operation takes a map lookup and a few atomic increments.
+ */
+public class DatabaseMetrics {
+    /**
+     * Operations made by the database manager
+     */
+    public enum Operation {
+        FIND("find"),
+        FOR_EACH("forEach"),
+        FIND_ONE("findOne"),
+        INSERT_ONE("insertOne"),
+        UPDATE_ONE("updateOne"),
+        UPDATE_MANY("updateMany"),
+        UPSERT("upsert"),
+        FIND_ONE_AND_UPDATE("findOneAndUpdate"),
+        DELETE_ONE("deleteOne"),
+        DELETE_MANY("deleteMany"),
+        BULK_WRITE("bulkWrite");
+
+        private final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the name of the operation
+         * @return The name, e.g. findOne
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static final String JMX_DOMAIN = "org.emrage.twitchbattleapi";
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    // Stats of each collection, indexed by operation
+    private final Map<String, OperationStats[]> collections = new ConcurrentHashMap<>();
+    private final List<MetricsRegistry> registries = new CopyOnWriteArrayList<>();
+    private final List<ObjectName> registeredBeans = new CopyOnWriteArrayList<>();
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+    private volatile long slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(100L);
+    private volatile boolean jmxEnabled;
+
+    /**
+     * Record a finished operation
+     * @param collection Collection name
+     * @param operation The operation
+     * @param startNanos Start time from {@link System#nanoTime()}
+     * @param success Whether the operation succeeded
+     * @param details Filter or description of the operation, only turned into text if it was slow
+     */
+    public void record(String collection, Operation operation, long startNanos, boolean success, Object details) {
+        long duration = System.nanoTime() - startNanos;
+        boolean slow = slowQueryThresholdNanos > 0 && duration >= slowQueryThresholdNanos;
+
+        getStats(collection)[operation.ordinal()].record(duration, success, slow);
+        for (MetricsRegistry registry : registries) {
+            registry.recordOperation(collection, operation.getName(), duration, success);
+        }
+
+        if (slow) {
+            logger.warning("Slow database operation: " + operation.getName() + " on " + collection + " took "
+                    + TimeUnit.NANOSECONDS.toMillis(duration) + " ms" + (details != null ? ", " + details : ""));
+        }
+    }
+
+    private OperationStats[] getStats(String collection) {
+        OperationStats[] stats = collections.get(collection);
+        if (stats != null) {
+            return stats;
+        }
+
+        return collections.computeIfAbsent(collection, name -> {
+            OperationStats[] created = new OperationStats[OPERATIONS.length];
+            for (Operation operation : OPERATIONS) {
+                created[operation.ordinal()] = new OperationStats(name, operation.getName());
+            }
+            if (jmxEnabled) {
+                register(created);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Get the statistics of an operation on a collection
+     * @param collection Collection name
+     * @param operation The operation
+     * @return The statistics
+     */
+    public OperationStats getStats(String collection, Operation operation) {
+        return getStats(collection)[operation.ordinal()];
+    }
+
+    /**
+     * Get the statistics of all operations that ran at least once
+     * @return The statistics
+     */
+    public List<OperationStats> getAllStats() {
+        List<OperationStats> all = new ArrayList<>();
+        for (OperationStats[] stats : collections.values()) {
+            for (OperationStats operation : stats) {
+                if (operation.getCount() > 0) {
+                    all.add(operation);
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Add a registry that receives the timing of every operation
+     * @param registry The registry
+     */
+    public void addRegistry(MetricsRegistry registry) {
+        registries.add(registry);
+    }
+
+    /**
+     * Remove a metrics registry
+     * @param registry The registry
+     */
+    public void removeRegistry(MetricsRegistry registry) {
+        registries.remove(registry);
+    }
+
+    /**
+     * Set the duration above which operations are logged as slow
+     * @param thresholdMillis The threshold in milliseconds, 0 to disable
+     */
+    public void setSlowQueryThreshold(long thresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, thresholdMillis));
+    }
+
+    /**
+     * Publish the statistics as MBeans named org.emrage.twitchbattleapi:type=DatabaseOperation,collection=...,operation=...
+     */
+    public synchronized void enableJmx() {
+        if (jmxEnabled) {
+            return;
+        }
+
+        jmxEnabled = true;
+        for (OperationStats[] stats : collections.values()) {
+            register(stats);
+        }
+    }
+
+    /**
+     * Remove the MBeans, e.g. when the plugin is disabled
+     */
+    public synchronized void disableJmx() {
+        jmxEnabled = false;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredBeans) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to unregister MBean " + name, e);
+            }
+        }
+        registeredBeans.clear();
+    }
+
+    private void register(OperationStats[] stats) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationStats operation : stats) {
+            try {
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=DatabaseOperation,collection="
+                        + ObjectName.quote(operation.getCollection()) + ",operation=" + operation.getOperation());
+                // A reloaded plugin replaces the beans of the previous instance
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(operation, name);
+                registeredBeans.add(name);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to register MBean for " + operation.getCollection() + "." + operation.getOperation(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.emrage.twitchbattleapi.database;
+
+/**
+ * Receives the timing of every database operation, e.g. to forward it to Micrometer or Prometheus.
+ * Called on the thread that ran the operation, so implementations must be thread-safe and fast.
+ */
+@FunctionalInterface
+public interface MetricsRegistry {
+    /**
+     * A database operation finished
+     * @param collection Collection name
+     * @param operation Operation name, e.g. findOne or bulkWrite
+     * @param durationNanos Duration in nanoseconds
+     * @param success Whether the operation succeeded
+     */
+    void recordOperation(String collection, String operation, long durationNanos, boolean success);
+}
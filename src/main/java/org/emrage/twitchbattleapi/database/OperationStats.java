@@ -0,0 +1,99 @@
+package org.emrage.twitchbattleapi.database;
+
+import org.emrage.twitchbattleapi.utils.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of one operation on one collection
+ */
+public class OperationStats implements OperationStatsMXBean {
+    private final String collection;
+    private final String operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder slowCount = new LongAdder();
+
+    /**
+     * Create new operation statistics
+     * @param collection Collection name
+     * @param operation Operation name
+     */
+    public OperationStats(String collection, String operation) {
+        this.collection = collection;
+        this.operation = operation;
+    }
+
+    /**
+     * Record a finished operation
+     * @param durationNanos Duration in nanoseconds
+     * @param success Whether the operation succeeded
+     * @param slow Whether the operation was slower than the slow query threshold
+     */
+    void record(long durationNanos, boolean success, boolean slow) {
+        latencies.record(durationNanos / 1000L);
+        if (!success) {
+            errors.increment();
+        }
+        if (slow) {
+            slowCount.increment();
+        }
+    }
+
+    @Override
+    public String getCollection() {
+        return collection;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getSlowCount() {
+        return slowCount.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.getMean();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latencies.getPercentile(50.0);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latencies.getPercentile(99.0);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latencies.getPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latencies.getMax();
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        errors.reset();
+        slowCount.reset();
+    }
+}
@@ -0,0 +1,61 @@
+package org.emrage.twitchbattleapi.database;
+
+/**
+ * JMX view of the statistics of one operation on one collection
+ */
+public interface OperationStatsMXBean {
+    /**
+     * @return The collection name
+     */
+    String getCollection();
+
+    /**
+     * @return The operation name
+     */
+    String getOperation();
+
+    /**
+     * @return Number of finished operations
+     */
+    long getCount();
+
+    /**
+     * @return Number of failed operations
+     */
+    long getErrors();
+
+    /**
+     * @return Number of operations slower than the slow query threshold
+     */
+    long getSlowCount();
+
+    /**
+     * @return Mean duration in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * @return Median duration in microseconds
+     */
+    long getP50Micros();
+
+    /**
+     * @return 99th percentile of the duration in microseconds
+     */
+    long getP99Micros();
+
+    /**
+     * @return 99.9th percentile of the duration in microseconds
+     */
+    long getP999Micros();
+
+    /**
+     * @return Longest duration in microseconds
+     */
+    long getMaxMicros();
+
+    /**
+     * Start counting from zero
+     */
+    void reset();
+}
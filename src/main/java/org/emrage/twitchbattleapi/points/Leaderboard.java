@@ -0,0 +1,261 @@
+package org.emrage.twitchbattleapi.points;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
+
+/**
+ * Incrementally updated ranking of teams or players by points.
+ * Point changes only mark a key as dirty, which is lock-free. Dirty keys are
+ * re-ranked on the next query, so a query costs O(d log n) for d changed keys
+ * plus O(log n) for a rank or O(log n + k) for the top k entries.
+ * @param <K> The key type (team ID or player UUID)
+ */
+public class Leaderboard<K extends Comparable<K>> {
+    /**
+     * Value returned by the points source for keys that have no points
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    private final ToLongFunction<K> source;
+    private final Set<K> dirty = ConcurrentHashMap.newKeySet();
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private Node<K> root;
+
+    /**
+     * Create a new leaderboard
+     * @param source Returns the current points of a key, or {@link #ABSENT}
+     */
+    public Leaderboard(ToLongFunction<K> source) {
+        this.source = source;
+    }
+
+    /**
+     * Mark the points of a key as changed
+     * @param key The key
+     */
+    public void markDirty(K key) {
+        dirty.add(key);
+    }
+
+    /**
+     * Remove all entries
+     */
+    public synchronized void clear() {
+        dirty.clear();
+        nodes.clear();
+        root = null;
+    }
+
+    /**
+     * Get the entries with the most points
+     * @param limit The maximum number of entries
+     * @return Ordered map of key to points, highest first
+     */
+    public synchronized Map<K, Long> getTop(int limit) {
+        refresh();
+        Map<K, Long> top = new LinkedHashMap<>();
+        Deque<Node<K>> stack = new ArrayDeque<>();
+        Node<K> current = root;
+        while (top.size() < limit && (current != null || !stack.isEmpty())) {
+            while (current != null) {
+                stack.push(current);
+                current = current.left;
+            }
+            current = stack.pop();
+            top.put(current.key, current.points);
+            current = current.right;
+        }
+        return top;
+    }
+
+    /**
+     * Get the rank of a key
+     * @param key The key
+     * @return The rank starting at 1, or -1 if the key has no points
+     */
+    public synchronized int getRank(K key) {
+        refresh();
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            return -1;
+        }
+
+        int rank = 1;
+        Node<K> current = root;
+        while (current != null) {
+            int cmp = compare(node, current);
+            if (cmp < 0) {
+                current = current.left;
+            } else if (cmp > 0) {
+                rank += size(current.left) + 1;
+                current = current.right;
+            } else {
+                rank += size(current.left);
+                break;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Get the number of ranked entries
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        refresh();
+        return size(root);
+    }
+
+    /**
+     * Re-rank all dirty keys
+     */
+    private void refresh() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        for (K key : dirty) {
+            // Remove before reading so that a concurrent change marks the key again
+            dirty.remove(key);
+            long points = source.applyAsLong(key);
+
+            Node<K> node = nodes.get(key);
+            if (node != null) {
+                if (points == node.points) {
+                    continue;
+                }
+                root = remove(root, node);
+                node.left = null;
+                node.right = null;
+                node.size = 1;
+            }
+
+            if (points == ABSENT) {
+                nodes.remove(key);
+                continue;
+            }
+
+            if (node == null) {
+                node = new Node<>(key);
+                nodes.put(key, node);
+            }
+            node.points = points;
+            root = insert(root, node);
+        }
+    }
+
+    /**
+     * Order by points (descending), then by key
+     */
+    private int compare(Node<K> a, Node<K> b) {
+        if (a == b) {
+            return 0;
+        }
+        int cmp = Long.compare(b.points, a.points);
+        return cmp != 0 ? cmp : a.key.compareTo(b.key);
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static void update(Node<?> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private Node<K> insert(Node<K> tree, Node<K> node) {
+        if (tree == null) {
+            return node;
+        }
+        if (node.priority > tree.priority) {
+            split(tree, node);
+            update(node);
+            return node;
+        }
+        if (compare(node, tree) < 0) {
+            tree.left = insert(tree.left, node);
+        } else {
+            tree.right = insert(tree.right, node);
+        }
+        update(tree);
+        return tree;
+    }
+
+    /**
+     * Split a tree into the nodes before and after a pivot, stored as the pivot's children
+     */
+    private void split(Node<K> tree, Node<K> pivot) {
+        if (tree == null) {
+            pivot.left = null;
+            pivot.right = null;
+            return;
+        }
+        if (compare(tree, pivot) < 0) {
+            split(tree.right, pivot);
+            tree.right = pivot.left;
+            update(tree);
+            pivot.left = tree;
+        } else {
+            split(tree.left, pivot);
+            tree.left = pivot.right;
+            update(tree);
+            pivot.right = tree;
+        }
+    }
+
+    private Node<K> remove(Node<K> tree, Node<K> node) {
+        if (tree == null) {
+            return null;
+        }
+        if (tree == node) {
+            return merge(tree.left, tree.right);
+        }
+        if (compare(node, tree) < 0) {
+            tree.left = remove(tree.left, node);
+        } else {
+            tree.right = remove(tree.right, node);
+        }
+        update(tree);
+        return tree;
+    }
+
+    private Node<K> merge(Node<K> left, Node<K> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    /**
+     * Treap node, augmented with its subtree size for ranking
+     */
+    private static final class Node<K> {
+        final K key;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        long points;
+        int size = 1;
+        Node<K> left;
+        Node<K> right;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+}
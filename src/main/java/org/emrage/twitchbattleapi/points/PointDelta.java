@@ -0,0 +1,127 @@
+package org.emrage.twitchbattleapi.points;
+
+import org.bson.Document;
+
+import java.util.Date;
+
+/**
+ * A pending change to the points of a team or player.
+ * Relative changes are written with $inc, absolute values with $set.
+ * A change can be tagged with the server that writes it, see {@link WriteTracker}.
+ */
+public final class PointDelta {
+    /**
+     * Field of a points document with the last write sequence of every server
+     */
+    public static final String WRITES_FIELD = "writes";
+
+    private final boolean absolute;
+    private final long value;
+    private final String writer;
+    private final long sequence;
+
+    private PointDelta(boolean absolute, long value) {
+        this(absolute, value, null, 0L);
+    }
+
+    private PointDelta(boolean absolute, long value, String writer, long sequence) {
+        this.absolute = absolute;
+        this.value = value;
+        this.writer = writer;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Create a relative change
+     * @param points The points to add
+     * @return The change
+     */
+    public static PointDelta add(long points) {
+        return new PointDelta(false, points);
+    }
+
+    /**
+     * Create an absolute change
+     * @param points The new total points
+     * @return The change
+     */
+    public static PointDelta set(long points) {
+        return new PointDelta(true, points);
+    }
+
+    /**
+     * Combine this change with a change that happened after it
+     * @param next The later change
+     * @return The combined change
+     */
+    public PointDelta then(PointDelta next) {
+        if (next.absolute) {
+            return new PointDelta(true, next.value);
+        }
+        return new PointDelta(absolute, value + next.value);
+    }
+
+    /**
+     * Apply this change to points
+     * @param points The points before the change
+     * @return The points after the change
+     */
+    public long applyTo(long points) {
+        return absolute ? value : points + value;
+    }
+
+    /**
+     * Tag this change with the server that writes it
+     * @param writer The server ID
+     * @param sequence The write sequence, increasing with every write of the server
+     * @return The tagged change
+     */
+    public PointDelta tag(String writer, long sequence) {
+        return new PointDelta(absolute, value, writer, sequence);
+    }
+
+    /**
+     * Get the write sequence of a tagged change
+     * @return The write sequence, or 0 if not tagged
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Check whether this change sets an absolute value
+     * @return True if absolute, false if relative
+     */
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
+    /**
+     * Get the points to add, or the new total if absolute
+     * @return The value
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * Build the MongoDB update for this change
+     * @return The update document
+     */
+    public Document toUpdate() {
+        Date now = new Date();
+        Document update = absolute
+                ? new Document("$set", new Document("points", value).append("last_updated", now))
+                : new Document("$inc", new Document("points", value)).append("$set", new Document("last_updated", now));
+        if (writer != null) {
+            // Lets the server recognize its own write in the document it gets back from the sync
+            update.append("$max", new Document(WRITES_FIELD + "." + writer, sequence));
+        }
+        return update;
+    }
+
+    @Override
+    public String toString() {
+        return absolute ? "=" + value : (value >= 0 ? "+" + value : String.valueOf(value));
+    }
+}
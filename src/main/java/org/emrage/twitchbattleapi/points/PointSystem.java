@@ -1,17 +1,30 @@
 package org.emrage.twitchbattleapi.points;
 
-import com.mongodb.client.model.Filters;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.emrage.twitchbattleapi.TwitchBattleAPI;
-import org.emrage.twitchbattleapi.teams.Team;
-
+import org.emrage.twitchbattleapi.storage.MongoStorage;
+import org.emrage.twitchbattleapi.utils.IntLongMap;
+import org.emrage.twitchbattleapi.utils.KnownPlayers;
+import org.emrage.twitchbattleapi.utils.UuidLongMap;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 /**
@@ -19,83 +32,326 @@ import java.util.logging.Logger;
  */
 public class PointSystem {
     private final TwitchBattleAPI api;
-    private final Map<Integer, Integer> teamPoints;
-    private final Map<UUID, Integer> playerPoints;
+    private final IntLongMap teamPoints;
+    private final UuidLongMap playerPoints;
+    private final Leaderboard<Integer> teamLeaderboard;
+    private final Leaderboard<UUID> playerLeaderboard;
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private final PointWriteQueue writeQueue;
+    // _id of each points document, to resolve deletes from other servers. Only kept when syncing.
+    private final Map<Object, Object> documentKeys;
+    // Writes of this server that the sync has not delivered back yet. Only kept when syncing.
+    private final WriteTracker writeTracker;
     private final Logger logger = Logger.getLogger("TwitchBattleAPI");
 
     /**
-     * Create a new point system
+     * Create a new point system. Points are loaded separately by {@link #loadPoints()}.
      * @param api The API instance
      */
     public PointSystem(TwitchBattleAPI api) {
         this.api = api;
-        this.teamPoints = new HashMap<>();
-        this.playerPoints = new HashMap<>();
-        loadPoints();
+        this.teamPoints = new IntLongMap();
+        this.playerPoints = new UuidLongMap(1024);
+        this.teamLeaderboard = new Leaderboard<>(teamId -> teamPoints.get(teamId, Leaderboard.ABSENT));
+        this.playerLeaderboard = new Leaderboard<>(playerUUID -> playerPoints.get(playerUUID, Leaderboard.ABSENT));
+
+        boolean sync = api.getPlugin().getConfig().getBoolean("sync.enabled", false);
+        this.documentKeys = sync ? new ConcurrentHashMap<>() : null;
+        this.writeTracker = sync && api.getDatabaseManager() != null ? new WriteTracker(getServerId()) : null;
+
+        // Write-behind: update memory immediately and persist on a background thread
+        if (api.getPlugin().getConfig().getBoolean("points.writeBehind.enabled", false)) {
+            long flushInterval = api.getPlugin().getConfig().getLong("points.writeBehind.flushInterval", 1000L);
+            int queueCapacity = api.getPlugin().getConfig().getInt("points.writeBehind.queueCapacity", 10000);
+            int maxAttempts = api.getPlugin().getConfig().getInt("points.writeBehind.maxAttempts", PointWriteQueue.DEFAULT_MAX_ATTEMPTS);
+            this.writeQueue = new PointWriteQueue(this::writePoints, flushInterval, queueCapacity, writeTracker, maxAttempts);
+        } else {
+            this.writeQueue = null;
+        }
     }
 
     /**
-     * Load points from the database
+     * Get the ID under which this server tags its point writes
+     * @return The configured ID, or one made of host name and plugin folder
      */
-    private void loadPoints() {
-        // Load team points
-        Document teamFilter = new Document();
-        teamFilter.append("team_id", new Document("$ne", null));
+    private String getServerId() {
+        String serverId = api.getPlugin().getConfig().getString("sync.serverId", "");
+        if (serverId == null || serverId.isBlank()) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "localhost";
+            }
+            serverId = host + "-" + Integer.toHexString(api.getPlugin().getDataFolder().getAbsolutePath().hashCode());
+        }
+        // Used as a field name in MongoDB
+        return serverId.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    /**
+     * Load points from the storage.
+     * Called by the API during startup, see {@link TwitchBattleAPI#getReadyFuture()}.
+     */
+    public void loadPoints() {
+        if (!api.getStorage().loadPoints(this::loaded)) {
+            throw new IllegalStateException("Failed to load points");
+        }
+    }
+
+    /**
+     * Load points from a snapshot of an earlier run and read only the points changed since.
+     * Falls back to loading all points if the changes can't be read.
+     * Called by the API during startup, see {@link TwitchBattleAPI#getReadyFuture()}.
+     * @param snapshot The section written by {@link #writeSnapshot(ByteBuffer)}
+     * @param since Time from which changes are not contained in the snapshot
+     */
+    public void loadPoints(ByteBuffer snapshot, long since) {
+        if (readSnapshot(snapshot) && api.getStorage().loadPointsSince(since, this::loaded)) {
+            return;
+        }
 
-        List<Document> teamDocs = api.getDatabaseManager().find("points", teamFilter);
-        for (Document doc : teamDocs) {
-            int teamId = doc.getInteger("team_id");
-            int points = doc.getInteger("points", 0);
+        logger.info("Points can't be caught up from the snapshot, loading all points");
+        teamPoints.clear();
+        playerPoints.clear();
+        teamLeaderboard.clear();
+        playerLeaderboard.clear();
+        if (documentKeys != null) {
+            documentKeys.clear();
+        }
+        loadPoints();
+    }
+
+    private void loaded(Object key, long points, Object recordId) {
+        if (key instanceof Integer teamId) {
             teamPoints.put(teamId, points);
+            teamChanged(teamId);
+        } else {
+            playerPoints.put((UUID) key, points);
+            playerChanged((UUID) key);
+        }
+        if (documentKeys != null && recordId != null) {
+            documentKeys.put(recordId, key);
         }
+    }
 
-        // Load player points
-        Document playerFilter = new Document();
-        playerFilter.append("player_uuid", new Document("$ne", null));
+    /**
+     * Read the points of a snapshot
+     * @param buffer The snapshot section, may be null
+     * @return True if read, false if the snapshot is missing, broken or lacks document IDs needed for syncing
+     */
+    private boolean readSnapshot(ByteBuffer buffer) {
+        if (buffer == null) {
+            return false;
+        }
 
-        List<Document> playerDocs = api.getDatabaseManager().find("points", playerFilter);
-        for (Document doc : playerDocs) {
-            UUID playerUUID = UUID.fromString(doc.getString("player_uuid"));
-            int points = doc.getInteger("points", 0);
-            playerPoints.put(playerUUID, points);
+        try {
+            boolean withIds = buffer.get() != 0;
+            if (!withIds && documentKeys != null) {
+                return false;
+            }
+
+            int teams = buffer.getInt();
+            for (int i = 0; i < teams; i++) {
+                int teamId = buffer.getInt();
+                long points = buffer.getLong();
+                loaded(teamId, points, withIds ? getRecordId(buffer) : null);
+            }
+
+            int players = buffer.getInt();
+            for (int i = 0; i < players; i++) {
+                UUID playerUUID = new UUID(buffer.getLong(), buffer.getLong());
+                long points = buffer.getLong();
+                loaded(playerUUID, points, withIds ? getRecordId(buffer) : null);
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            logger.warning("Ignoring broken points snapshot");
+            return false;
         }
     }
 
     /**
-     * Add points to a team
-     * @param teamId The team ID
-     * @param points The points to add
-     * @return The new total points
+     * Get the maximum size of the snapshot written by {@link #writeSnapshot(ByteBuffer)}
+     * @return The size in bytes
+     */
+    public long estimateSnapshotSize() {
+        int idSize = documentKeys != null ? 13 : 0;
+        // Leave room for points that are added while the snapshot is written
+        return 9L + (teamPoints.size() + 64L) * (12 + idSize) + (playerPoints.size() + 1024L) * (24 + idSize);
+    }
+
+    /**
+     * Write all points to a snapshot, which is loaded by {@link #loadPoints(ByteBuffer, long)} on the next start
+     * @param buffer The buffer to write to
+     * @return True if written, false if changes could not be stored and the snapshot would contain them
      */
-    public int addTeamPoints(int teamId, int points) {
-        int currentPoints = getTeamPoints(teamId);
-        int newPoints = currentPoints + points;
-
-        Document filter = new Document("team_id", teamId);
-        Document existingDoc = api.getDatabaseManager().findOne("points", filter);
-
-        boolean success;
-        if (existingDoc == null) {
-            // Insert new document
-            Document newDoc = new Document()
-                    .append("team_id", teamId)
-                    .append("points", newPoints)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().insertOne("points", newDoc);
+    public boolean writeSnapshot(ByteBuffer buffer) {
+        if (writeQueue != null && writeQueue.size() > 0) {
+            logger.warning("Not writing a points snapshot, " + writeQueue.size() + " changes could not be stored");
+            return false;
+        }
+
+        Map<Object, Object> recordIds = new HashMap<>();
+        if (documentKeys != null) {
+            documentKeys.forEach((id, key) -> recordIds.put(key, id));
+        }
+        boolean withIds = documentKeys != null;
+        buffer.put((byte) (withIds ? 1 : 0));
+
+        int countAt = buffer.position();
+        int[] count = {0};
+        buffer.putInt(0);
+        teamPoints.forEach((teamId, points) -> {
+            buffer.putInt(teamId).putLong(points);
+            if (withIds) {
+                putRecordId(buffer, recordIds.get(teamId));
+            }
+            count[0]++;
+        });
+        buffer.putInt(countAt, count[0]);
+
+        countAt = buffer.position();
+        count[0] = 0;
+        buffer.putInt(0);
+        playerPoints.forEach((msb, lsb, points) -> {
+            buffer.putLong(msb).putLong(lsb).putLong(points);
+            if (withIds) {
+                putRecordId(buffer, recordIds.get(new UUID(msb, lsb)));
+            }
+            count[0]++;
+        });
+        buffer.putInt(countAt, count[0]);
+        return true;
+    }
+
+    private static void putRecordId(ByteBuffer buffer, Object recordId) {
+        // Points documents are created by upserts and get an ObjectId, other IDs are not stored
+        if (recordId instanceof ObjectId objectId) {
+            buffer.put((byte) 1).put(objectId.toByteArray());
         } else {
-            // Update existing document
-            Document update = new Document()
-                    .append("points", newPoints)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().updateOne("points", filter, update);
+            buffer.put((byte) 0).put(new byte[12]);
         }
+    }
 
-        if (success) {
-            teamPoints.put(teamId, newPoints);
-            return newPoints;
+    private static Object getRecordId(ByteBuffer buffer) {
+        boolean present = buffer.get() != 0;
+        byte[] bytes = new byte[12];
+        buffer.get(bytes);
+        return present ? new ObjectId(bytes) : null;
+    }
+
+    /**
+     * Apply a points document that was written by another server
+     * @param doc The points document
+     */
+    public void applyRemote(Document doc) {
+        Object key = MongoStorage.getKey(doc);
+        if (key == null) {
+            return;
+        }
+        if (documentKeys != null) {
+            documentKeys.put(doc.get("_id"), key);
+        }
+
+        if (writeTracker == null) {
+            setLocal(key, withPending(key, MongoStorage.getPoints(doc)));
+            return;
+        }
+        synchronized (writeTracker) {
+            // Writes of this server the document does not contain yet, then changes not written yet, apply on top
+            long points = MongoStorage.getPoints(doc);
+            PointDelta unacknowledged = writeTracker.unacknowledged(key, MongoStorage.getWriteSequence(doc, writeTracker.getWriterId()));
+            if (unacknowledged != null) {
+                points = unacknowledged.applyTo(points);
+            }
+            setLocal(key, withPending(key, points));
         }
+    }
 
-        return currentPoints;
+    private long withPending(Object key, long points) {
+        PointDelta pending = writeQueue != null ? writeQueue.getPending(key) : null;
+        return pending != null ? pending.applyTo(points) : points;
+    }
+
+    /**
+     * Apply the deletion of a points document by another server
+     * @param id The _id of the document
+     */
+    public void removeRemote(Object id) {
+        Object key = documentKeys != null ? documentKeys.remove(id) : null;
+        if (key == null) {
+            return;
+        }
+        if (writeTracker == null) {
+            removeLocal(key);
+            return;
+        }
+        synchronized (writeTracker) {
+            removeLocal(key);
+        }
+    }
+
+    private void removeLocal(Object key) {
+        PointDelta unacknowledged = writeTracker != null ? writeTracker.unacknowledged(key, 0L) : null;
+        PointDelta pending = writeQueue != null ? writeQueue.getPending(key) : null;
+        if (unacknowledged != null || pending != null) {
+            // These changes will create the document again
+            long points = unacknowledged != null ? unacknowledged.applyTo(0L) : 0L;
+            setLocal(key, withPending(key, points));
+        } else if (key instanceof Integer teamId) {
+            if (teamPoints.remove(teamId)) {
+                teamChanged(teamId);
+            }
+        } else if (playerPoints.remove((UUID) key)) {
+            playerChanged((UUID) key);
+        }
+    }
+
+    /**
+     * Remove the points of all documents that no longer exist
+     * @param ids The _id of every points document
+     */
+    public void reconcileRemote(Set<Object> ids) {
+        if (documentKeys == null) {
+            return;
+        }
+        for (Object id : new ArrayList<>(documentKeys.keySet())) {
+            if (!ids.contains(id)) {
+                removeRemote(id);
+            }
+        }
+    }
+
+    /**
+     * Set the points of a team or player in memory
+     * @param key The team ID or player UUID
+     * @param points The points
+     */
+    private void setLocal(Object key, long points) {
+        if (key instanceof Integer teamId) {
+            if (teamPoints.get(teamId, Leaderboard.ABSENT) != points) {
+                teamPoints.put(teamId, points);
+                teamChanged(teamId);
+            }
+        } else {
+            UUID playerUUID = (UUID) key;
+            if (playerPoints.get(playerUUID, Leaderboard.ABSENT) != points) {
+                playerPoints.put(playerUUID, points);
+                playerChanged(playerUUID);
+            }
+        }
+    }
+
+    /**
+     * Add points to a team
+     * @param teamId The team ID
+     * @param points The points to add
+     * @return The new total points
+     */
+    public long addTeamPoints(int teamId, long points) {
+        Long newPoints = change(teamId, PointDelta.add(points));
+        return newPoints != null ? newPoints : getTeamPoints(teamId);
     }
 
     /**
@@ -104,7 +360,7 @@ public class PointSystem {
      * @param points The points to remove
      * @return The new total points
      */
-    public int removeTeamPoints(int teamId, int points) {
+    public long removeTeamPoints(int teamId, long points) {
         return addTeamPoints(teamId, -points);
     }
 
@@ -114,32 +370,8 @@ public class PointSystem {
      * @param points The points to set
      * @return True if successful, false otherwise
      */
-    public boolean setTeamPoints(int teamId, int points) {
-        Document filter = new Document("team_id", teamId);
-        Document existingDoc = api.getDatabaseManager().findOne("points", filter);
-
-        boolean success;
-        if (existingDoc == null) {
-            // Insert new document
-            Document newDoc = new Document()
-                    .append("team_id", teamId)
-                    .append("points", points)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().insertOne("points", newDoc);
-        } else {
-            // Update existing document
-            Document update = new Document()
-                    .append("points", points)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().updateOne("points", filter, update);
-        }
-
-        if (success) {
-            teamPoints.put(teamId, points);
-            return true;
-        }
-
-        return false;
+    public boolean setTeamPoints(int teamId, long points) {
+        return change(teamId, PointDelta.set(points)) != null;
     }
 
     /**
@@ -147,8 +379,8 @@ public class PointSystem {
      * @param teamId The team ID
      * @return The team points
      */
-    public int getTeamPoints(int teamId) {
-        return teamPoints.getOrDefault(teamId, 0);
+    public long getTeamPoints(int teamId) {
+        return teamPoints.get(teamId, 0L);
     }
 
     /**
@@ -157,132 +389,350 @@ public class PointSystem {
      * @param points The points to add
      * @return The new total points
      */
-    public int addPlayerPoints(UUID playerUUID, int points) {
-        int currentPoints = getPlayerPoints(playerUUID);
-        int newPoints = currentPoints + points;
-
-        // Ensure player exists in the database
-        ensurePlayerExists(playerUUID);
-
-        // Update points
-        Document filter = new Document("player_uuid", playerUUID.toString());
-        Document existingDoc = api.getDatabaseManager().findOne("points", filter);
-
-        boolean success;
-        if (existingDoc == null) {
-            // Insert new document
-            Document newDoc = new Document()
-                    .append("player_uuid", playerUUID.toString())
-                    .append("points", newPoints)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().insertOne("points", newDoc);
-        } else {
-            // Update existing document
-            Document update = new Document()
-                    .append("points", newPoints)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().updateOne("points", filter, update);
+    public long addPlayerPoints(UUID playerUUID, long points) {
+        Long newPoints = change(playerUUID, PointDelta.add(points));
+        return newPoints != null ? newPoints : getPlayerPoints(playerUUID);
+    }
+
+    /**
+     * Remove points from a player
+     * @param playerUUID The player UUID
+     * @param points The points to remove
+     * @return The new total points
+     */
+    public long removePlayerPoints(UUID playerUUID, long points) {
+        return addPlayerPoints(playerUUID, -points);
+    }
+
+    /**
+     * Set player points
+     * @param playerUUID The player UUID
+     * @param points The points to set
+     * @return True if successful, false otherwise
+     */
+    public boolean setPlayerPoints(UUID playerUUID, long points) {
+        return change(playerUUID, PointDelta.set(points)) != null;
+    }
+
+    /**
+     * Change the points of a team or player in memory and in the storage
+     * @param key The team ID or player UUID
+     * @param delta The change
+     * @return The new points, or null if the change could not be written
+     */
+    private Long change(Object key, PointDelta delta) {
+        // Loading replaces the points in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
+            return null;
         }
 
-        if (success) {
-            playerPoints.put(playerUUID, newPoints);
+        if (writeQueue != null) {
+            if (writeTracker == null) {
+                long newPoints = applyLocal(key, delta);
+                writeQueue.enqueue(key, delta);
+                return newPoints;
+            }
+
+            long newPoints;
+            boolean queued;
+            // A document from the sync must see the change either in memory and queued, or not at all
+            synchronized (writeTracker) {
+                newPoints = applyLocal(key, delta);
+                queued = writeQueue.offer(key, delta);
+            }
+            if (!queued) {
+                writeQueue.awaitSpace(key);
+            }
             return newPoints;
         }
 
-        return currentPoints;
+        if (writeTracker == null) {
+            return writePoints(Map.of(key, delta)).isEmpty() ? applyLocal(key, delta) : null;
+        }
+
+        PointDelta tagged = writeTracker.begin(key, delta, false);
+        boolean written = writePoints(Map.of(key, tagged)).isEmpty();
+        synchronized (writeTracker) {
+            if (!written) {
+                writeTracker.fail(key, tagged.getSequence());
+                return null;
+            }
+            // Skipped if the sync already delivered a document containing this write
+            return writeTracker.applied(key, tagged.getSequence()) ? applyLocal(key, delta) : getLocal(key);
+        }
     }
 
     /**
-     * Ensure player exists in the database
-     * @param playerUUID The player UUID
+     * Apply a change to the points of a team or player in memory
+     * @param key The team ID or player UUID
+     * @param delta The change
+     * @return The new points
      */
-    private void ensurePlayerExists(UUID playerUUID) {
-        Document filter = new Document("uuid", playerUUID.toString());
-        Document playerDoc = api.getDatabaseManager().findOne("players", filter);
+    private long applyLocal(Object key, PointDelta delta) {
+        long newPoints = delta.getValue();
+        if (key instanceof Integer teamId) {
+            if (delta.isAbsolute()) {
+                teamPoints.put(teamId, newPoints);
+            } else {
+                newPoints = teamPoints.addTo(teamId, newPoints);
+            }
+            teamChanged(teamId);
+        } else {
+            UUID playerUUID = (UUID) key;
+            if (delta.isAbsolute()) {
+                playerPoints.put(playerUUID, newPoints);
+            } else {
+                newPoints = playerPoints.addTo(playerUUID, newPoints);
+            }
+            playerChanged(playerUUID);
+        }
+        return newPoints;
+    }
 
-        if (playerDoc == null) {
-            Player player = Bukkit.getPlayer(playerUUID);
-            String username = player != null ? player.getName() : playerUUID.toString();
+    private long getLocal(Object key) {
+        return key instanceof Integer teamId ? getTeamPoints(teamId) : getPlayerPoints((UUID) key);
+    }
 
-            Document newPlayerDoc = new Document()
-                    .append("uuid", playerUUID.toString())
-                    .append("username", username);
+    /**
+     * Write a batch of point changes to the storage
+     * @param batch The changes by team ID or player UUID
+     * @return The keys whose changes could not be written
+     */
+    private Collection<Object> writePoints(Map<?, PointDelta> batch) {
+        // Ensure players exist in the storage, unless they are already known to
+        KnownPlayers knownPlayers = api.getKnownPlayers();
+        Map<UUID, String> newPlayers = new HashMap<>();
+        for (Object key : batch.keySet()) {
+            if (key instanceof UUID playerUUID && !knownPlayers.contains(playerUUID)) {
+                newPlayers.put(playerUUID, getUsername(playerUUID));
+            }
+        }
 
-            api.getDatabaseManager().insertOne("players", newPlayerDoc);
+        if (!newPlayers.isEmpty()) {
+            Set<UUID> failedPlayers = new HashSet<>(api.getStorage().ensurePlayers(newPlayers));
+            for (UUID playerUUID : newPlayers.keySet()) {
+                if (!failedPlayers.contains(playerUUID)) {
+                    knownPlayers.add(playerUUID);
+                }
+            }
         }
+
+        return api.getStorage().writePoints(batch);
     }
 
     /**
-     * Remove points from a player
+     * Get the name to store for a player
      * @param playerUUID The player UUID
+     * @return The player name, or the UUID if the player is offline
+     */
+    private String getUsername(UUID playerUUID) {
+        Player player = Bukkit.getPlayer(playerUUID);
+        return player != null ? player.getName() : playerUUID.toString();
+    }
+
+    /**
+     * Get player points
+     * @param playerUUID The player UUID
+     * @return The player points
+     */
+    public long getPlayerPoints(UUID playerUUID) {
+        return playerPoints.get(playerUUID, 0L);
+    }
+
+    /**
+     * Get team points map
+     * @return Read-only live view of team ID to points
+     */
+    public Map<Integer, Long> getTeamPointsMap() {
+        return teamPoints.asMap();
+    }
+
+    /**
+     * Get player points map
+     * @return Read-only live view of player UUID to points
+     */
+    public Map<UUID, Long> getPlayerPointsMap() {
+        return playerPoints.asMap();
+    }
+
+    /**
+     * Add points to a team asynchronously
+     * @param teamId The team ID
+     * @param points The points to add
+     * @return Future with the new total points
+     */
+    public CompletableFuture<Long> addTeamPointsAsync(int teamId, long points) {
+        return api.supplyAsync(() -> addTeamPoints(teamId, points));
+    }
+
+    /**
+     * Remove points from a team asynchronously
+     * @param teamId The team ID
      * @param points The points to remove
-     * @return The new total points
+     * @return Future with the new total points
      */
-    public int removePlayerPoints(UUID playerUUID, int points) {
-        return addPlayerPoints(playerUUID, -points);
+    public CompletableFuture<Long> removeTeamPointsAsync(int teamId, long points) {
+        return api.supplyAsync(() -> removeTeamPoints(teamId, points));
     }
 
     /**
-     * Set player points
+     * Set team points asynchronously
+     * @param teamId The team ID
+     * @param points The points to set
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> setTeamPointsAsync(int teamId, long points) {
+        return api.supplyAsync(() -> setTeamPoints(teamId, points));
+    }
+
+    /**
+     * Add points to a player asynchronously
+     * @param playerUUID The player UUID
+     * @param points The points to add
+     * @return Future with the new total points
+     */
+    public CompletableFuture<Long> addPlayerPointsAsync(UUID playerUUID, long points) {
+        return api.supplyAsync(() -> addPlayerPoints(playerUUID, points));
+    }
+
+    /**
+     * Remove points from a player asynchronously
+     * @param playerUUID The player UUID
+     * @param points The points to remove
+     * @return Future with the new total points
+     */
+    public CompletableFuture<Long> removePlayerPointsAsync(UUID playerUUID, long points) {
+        return api.supplyAsync(() -> removePlayerPoints(playerUUID, points));
+    }
+
+    /**
+     * Set player points asynchronously
      * @param playerUUID The player UUID
      * @param points The points to set
-     * @return True if successful, false otherwise
+     * @return Future with true if successful, false otherwise
      */
-    public boolean setPlayerPoints(UUID playerUUID, int points) {
-        // Ensure player exists in the database
-        ensurePlayerExists(playerUUID);
-
-        // Update points
-        Document filter = new Document("player_uuid", playerUUID.toString());
-        Document existingDoc = api.getDatabaseManager().findOne("points", filter);
-
-        boolean success;
-        if (existingDoc == null) {
-            // Insert new document
-            Document newDoc = new Document()
-                    .append("player_uuid", playerUUID.toString())
-                    .append("points", points)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().insertOne("points", newDoc);
-        } else {
-            // Update existing document
-            Document update = new Document()
-                    .append("points", points)
-                    .append("last_updated", new java.util.Date());
-            success = api.getDatabaseManager().updateOne("points", filter, update);
-        }
+    public CompletableFuture<Boolean> setPlayerPointsAsync(UUID playerUUID, long points) {
+        return api.supplyAsync(() -> setPlayerPoints(playerUUID, points));
+    }
 
-        if (success) {
-            playerPoints.put(playerUUID, points);
-            return true;
+    /**
+     * Reset all team points asynchronously
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> resetTeamPointsAsync() {
+        return api.supplyAsync(this::resetTeamPoints);
+    }
+
+    /**
+     * Reset all player points asynchronously
+     * @return Future with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> resetPlayerPointsAsync() {
+        return api.supplyAsync(this::resetPlayerPoints);
+    }
+
+    /**
+     * Register a listener that is called whenever points change.
+     * Listeners run on the thread that changed the points and must return quickly.
+     * @param listener The listener
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Remove a change listener
+     * @param listener The listener
+     */
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void teamChanged(int teamId) {
+        teamLeaderboard.markDirty(teamId);
+        fireChange();
+    }
+
+    private void playerChanged(UUID playerUUID) {
+        playerLeaderboard.markDirty(playerUUID);
+        fireChange();
+    }
+
+    private void fireChange() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
         }
+    }
 
-        return false;
+    /**
+     * Get the teams with the most points
+     * @param limit The maximum number of teams
+     * @return Ordered map of team ID to points, highest first
+     */
+    public Map<Integer, Long> getTopTeams(int limit) {
+        return teamLeaderboard.getTop(limit);
     }
 
     /**
-     * Get player points
+     * Get the players with the most points
+     * @param limit The maximum number of players
+     * @return Ordered map of player UUID to points, highest first
+     */
+    public Map<UUID, Long> getTopPlayers(int limit) {
+        return playerLeaderboard.getTop(limit);
+    }
+
+    /**
+     * Get the rank of a team
+     * @param teamId The team ID
+     * @return The rank starting at 1, or -1 if the team has no points
+     */
+    public int getTeamRank(int teamId) {
+        return teamLeaderboard.getRank(teamId);
+    }
+
+    /**
+     * Get the rank of a player
      * @param playerUUID The player UUID
-     * @return The player points
+     * @return The rank starting at 1, or -1 if the player has no points
      */
-    public int getPlayerPoints(UUID playerUUID) {
-        return playerPoints.getOrDefault(playerUUID, 0);
+    public int getPlayerRank(UUID playerUUID) {
+        return playerLeaderboard.getRank(playerUUID);
     }
 
     /**
-     * Get team points map
-     * @return Map of team ID to points
+     * Write all pending point changes to the database (write-behind mode only)
      */
-    public Map<Integer, Integer> getTeamPointsMap() {
-        return new HashMap<>(teamPoints);
+    public void flush() {
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
     }
 
     /**
-     * Get player points map
-     * @return Map of player UUID to points
+     * Get the point changes that were given up after too many failed writes (write-behind mode only).
+     * They are contained in the points in memory, but not in the database.
+     * @return The failed change by team ID or player UUID
      */
-    public Map<UUID, Integer> getPlayerPointsMap() {
-        return new HashMap<>(playerPoints);
+    public Map<Object, PointDelta> getFailedChanges() {
+        return writeQueue != null ? writeQueue.getFailedChanges() : Map.of();
+    }
+
+    /**
+     * Check whether point changes are written in the background
+     * @return True if write-behind is enabled
+     */
+    public boolean isWriteBehind() {
+        return writeQueue != null;
+    }
+
+    /**
+     * Stop the background writer and flush pending changes
+     */
+    public void shutdown() {
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+        }
     }
 
     /**
@@ -290,19 +740,25 @@ public class PointSystem {
      * @return True if successful, false otherwise
      */
     public boolean resetTeamPoints() {
-        Document filter = new Document();
-        filter.append("team_id", new Document("$ne", null));
-
-        boolean success = false;
-        try {
-            api.getDatabaseManager().getDatabase().getCollection("points").deleteMany(filter);
-            success = true;
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Failed to reset team points", e);
+        if (!api.awaitReady()) {
+            return false;
         }
 
+        // Write pending changes first so they can't recreate documents afterwards
+        flush();
+
+        boolean success = api.getStorage().deletePoints(true);
+
         if (success) {
             teamPoints.clear();
+            teamLeaderboard.clear();
+            if (documentKeys != null) {
+                documentKeys.values().removeIf(key -> key instanceof Integer);
+            }
+            if (writeTracker != null) {
+                writeTracker.clear(key -> key instanceof Integer);
+            }
+            fireChange();
             return true;
         }
 
@@ -314,19 +770,25 @@ public class PointSystem {
      * @return True if successful, false otherwise
      */
     public boolean resetPlayerPoints() {
-        Document filter = new Document();
-        filter.append("player_uuid", new Document("$ne", null));
-
-        boolean success = false;
-        try {
-            api.getDatabaseManager().getDatabase().getCollection("points").deleteMany(filter);
-            success = true;
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Failed to reset player points", e);
+        if (!api.awaitReady()) {
+            return false;
         }
 
+        // Write pending changes first so they can't recreate documents afterwards
+        flush();
+
+        boolean success = api.getStorage().deletePoints(false);
+
         if (success) {
             playerPoints.clear();
+            playerLeaderboard.clear();
+            if (documentKeys != null) {
+                documentKeys.values().removeIf(key -> key instanceof UUID);
+            }
+            if (writeTracker != null) {
+                writeTracker.clear(key -> key instanceof UUID);
+            }
+            fireChange();
             return true;
         }
 
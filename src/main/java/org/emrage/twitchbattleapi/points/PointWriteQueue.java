@@ -0,0 +1,287 @@
+package org.emrage.twitchbattleapi.points;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind queue for point changes.
+ * Changes to the same key (team ID or player UUID) are merged into a single
+ * pending change until the next flush, which writes all of them in one batch
+ * on a background thread. The queue is bounded by the number of keys: when it
+ * is full, callers block until the writer has caught up.
+ * A key whose write fails is retried with an exponentially growing delay. After
+ * the maximum number of attempts its change is given up and kept as failed, so
+ * a change the database always rejects does not stay pending forever.
+ */
+public class PointWriteQueue {
+    /**
+     * Number of attempts before a change is given up, unless configured otherwise
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final BlockingQueue<Object> queue;
+    private final Set<Object> queued;
+    private final Map<Object, PointDelta> pending;
+    private final ScheduledExecutorService executor;
+    private final Function<Map<Object, PointDelta>, Collection<Object>> writer;
+    private final Object flushLock = new Object();
+    private final WriteTracker tracker;
+    private final long flushInterval;
+    private final int maxAttempts;
+    // Only used while holding the flush lock
+    private final Map<Object, Retry> retries = new HashMap<>();
+    private final Map<Object, PointDelta> failedChanges = new ConcurrentHashMap<>();
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+
+    /**
+     * Create a new write queue
+     * @param writer Writes a batch of changes, returns the keys that failed
+     * @param flushInterval Flush interval in milliseconds
+     * @param capacity Maximum number of keys waiting to be written
+     */
+    public PointWriteQueue(Function<Map<Object, PointDelta>, Collection<Object>> writer, long flushInterval, int capacity) {
+        this(writer, flushInterval, capacity, null);
+    }
+
+    /**
+     * Create a new write queue
+     * @param writer Writes a batch of changes, returns the keys that failed
+     * @param flushInterval Flush interval in milliseconds
+     * @param capacity Maximum number of keys waiting to be written
+     * @param tracker Tracks written changes until the sync has seen them, or null.
+     *                Changes move between pending and tracked while holding its lock.
+     */
+    public PointWriteQueue(Function<Map<Object, PointDelta>, Collection<Object>> writer, long flushInterval, int capacity,
+                           WriteTracker tracker) {
+        this(writer, flushInterval, capacity, tracker, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Create a new write queue
+     * @param writer Writes a batch of changes, returns the keys that failed
+     * @param flushInterval Flush interval in milliseconds, also the delay before the first retry of a failed key
+     * @param capacity Maximum number of keys waiting to be written
+     * @param tracker Tracks written changes until the sync has seen them, or null.
+     *                Changes move between pending and tracked while holding its lock.
+     * @param maxAttempts Number of failed writes after which the change of a key is given up
+     */
+    public PointWriteQueue(Function<Map<Object, PointDelta>, Collection<Object>> writer, long flushInterval, int capacity,
+                           WriteTracker tracker, int maxAttempts) {
+        this.writer = writer;
+        this.tracker = tracker;
+        this.flushInterval = Math.max(1L, flushInterval);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.queued = ConcurrentHashMap.newKeySet();
+        this.pending = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TwitchBattleAPI-PointWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(() -> flush(false), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a change. Blocks while the queue is full.
+     * @param key The team ID or player UUID
+     * @param delta The change
+     */
+    public void enqueue(Object key, PointDelta delta) {
+        if (!offer(key, delta)) {
+            awaitSpace(key);
+        }
+    }
+
+    /**
+     * Queue a change without blocking
+     * @param key The team ID or player UUID
+     * @param delta The change
+     * @return True if queued, false if the queue is full and {@link #awaitSpace(Object)} has to be called
+     */
+    boolean offer(Object key, PointDelta delta) {
+        pending.merge(key, delta, PointDelta::then);
+        return !queued.add(key) || queue.offer(key);
+    }
+
+    /**
+     * Trigger a flush and block until a key that did not fit into the queue is queued
+     * @param key The team ID or player UUID
+     */
+    void awaitSpace(Object key) {
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            flush();
+        }
+        try {
+            queue.put(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued.remove(key);
+            logger.warning("Interrupted while waiting for the point write queue, change for " + key + " is delayed until the next write");
+        }
+    }
+
+    /**
+     * Write all pending changes to the database, including failed keys that are still waiting for their retry
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    /**
+     * Write pending changes to the database
+     * @param retryNow Whether failed keys are retried before their retry delay has passed
+     */
+    void flush(boolean retryNow) {
+        synchronized (flushLock) {
+            List<Object> keys = new ArrayList<>();
+            queue.drainTo(keys);
+
+            // Pick up changes whose key could not be queued (interrupted caller, full queue on retry, retry delay)
+            for (Object key : pending.keySet()) {
+                if (queued.add(key)) {
+                    keys.add(key);
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            Map<Object, PointDelta> batch = new LinkedHashMap<>();
+            synchronized (tracker != null ? tracker : flushLock) {
+                for (Object key : keys) {
+                    // Unmark before taking the change so that later changes are queued again
+                    queued.remove(key);
+                    Retry retry = retries.get(key);
+                    if (!retryNow && retry != null && retry.notBefore > now) {
+                        // Stays pending and is picked up by a later flush
+                        continue;
+                    }
+                    PointDelta delta = pending.remove(key);
+                    if (delta != null) {
+                        batch.put(key, tracker != null ? tracker.begin(key, delta, true) : delta);
+                    }
+                }
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Collection<Object> failed;
+            try {
+                failed = writer.apply(batch);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Error writing " + batch.size() + " point changes", e);
+                failed = batch.keySet();
+            }
+
+            Set<Object> failedKeys = Set.copyOf(failed);
+            for (Object key : batch.keySet()) {
+                if (!failedKeys.contains(key)) {
+                    retries.remove(key);
+                }
+            }
+
+            // Put failed changes back in front of anything that was queued meanwhile
+            synchronized (tracker != null ? tracker : flushLock) {
+                for (Object key : failedKeys) {
+                    PointDelta delta = batch.get(key);
+                    if (tracker != null) {
+                        tracker.fail(key, delta.getSequence());
+                    }
+                    pending.merge(key, delta, (newer, older) -> older.then(newer));
+
+                    Retry retry = retries.get(key);
+                    int attempts = retry != null ? retry.attempts + 1 : 1;
+                    if (attempts >= maxAttempts) {
+                        giveUp(key, attempts);
+                        continue;
+                    }
+                    // Doubles with every attempt: flushInterval, 2 * flushInterval, ...
+                    long delay = Math.min(MAX_RETRY_DELAY_MILLIS, flushInterval << Math.min(attempts - 1, 20));
+                    retries.put(key, new Retry(attempts, now + delay));
+                    if (queued.add(key) && !queue.offer(key)) {
+                        // Picked up again by the next flush
+                        queued.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop writing the change of a key and keep it as failed
+     * @param key The team ID or player UUID
+     * @param attempts Number of failed writes
+     */
+    private void giveUp(Object key, int attempts) {
+        retries.remove(key);
+        PointDelta delta = pending.remove(key);
+        if (delta == null) {
+            return;
+        }
+        failedChanges.merge(key, delta, (older, newer) -> older.then(newer));
+        logger.severe("Giving up point change " + delta + " for " + key + " after " + attempts
+                + " failed writes, it is only kept in memory");
+    }
+
+    /**
+     * Get the changes that were given up after too many failed writes.
+     * They are still contained in the points in memory, but not in the database.
+     * @return Read-only view of the failed change by team ID or player UUID
+     */
+    public Map<Object, PointDelta> getFailedChanges() {
+        return Collections.unmodifiableMap(failedChanges);
+    }
+
+    /**
+     * Get the pending change of a key
+     * @param key The team ID or player UUID
+     * @return The pending change, or null if there is none
+     */
+    public PointDelta getPending(Object key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Get the number of keys waiting to be written, without the given up ones
+     * @return The queue size
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Stop the background writer and flush all remaining changes
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private record Retry(int attempts, long notBefore) {
+    }
+}
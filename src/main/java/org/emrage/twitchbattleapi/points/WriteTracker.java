@@ -0,0 +1,143 @@
+package org.emrage.twitchbattleapi.points;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Tracks the point writes of this server that the sync has not seen yet.
+ * Every write is tagged with an increasing sequence that the database keeps
+ * per server in the points document. A document received from the sync thus
+ * tells which writes of this server it already contains, and only the others
+ * are applied on top of it.
+ * All methods are synchronized; callers that combine them with other changes
+ * synchronize on the tracker as well.
+ */
+public class WriteTracker {
+    // Keys with more writes in flight have lost their sync events, the oldest ones are long written
+    private static final int MAX_WRITES_PER_KEY = 256;
+
+    private final String writerId;
+    private final Map<Object, Deque<Write>> writes = new HashMap<>();
+    private long nextSequence;
+
+    /**
+     * Create a new write tracker
+     * @param writerId ID of this server, stored as field name in the points documents
+     */
+    public WriteTracker(String writerId) {
+        this.writerId = writerId;
+        // Keeps increasing across restarts, so writes before a restart never look newer
+        this.nextSequence = System.currentTimeMillis() * 1000;
+    }
+
+    /**
+     * Get the ID of this server
+     * @return The writer ID
+     */
+    public String getWriterId() {
+        return writerId;
+    }
+
+    /**
+     * Start a write
+     * @param key The team ID or player UUID
+     * @param delta The change
+     * @param applied Whether the change is already applied to the cached points
+     * @return The change tagged with this server and its write sequence
+     */
+    public synchronized PointDelta begin(Object key, PointDelta delta, boolean applied) {
+        long sequence = ++nextSequence;
+        Deque<Write> keyWrites = writes.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (keyWrites.size() >= MAX_WRITES_PER_KEY) {
+            keyWrites.removeFirst();
+        }
+        keyWrites.addLast(new Write(sequence, delta, applied));
+        return delta.tag(writerId, sequence);
+    }
+
+    /**
+     * Forget a write that failed
+     * @param key The team ID or player UUID
+     * @param sequence The write sequence
+     */
+    public synchronized void fail(Object key, long sequence) {
+        Deque<Write> keyWrites = writes.get(key);
+        if (keyWrites != null) {
+            keyWrites.removeIf(write -> write.sequence == sequence);
+            if (keyWrites.isEmpty()) {
+                writes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Mark a successful write as applied to the cached points
+     * @param key The team ID or player UUID
+     * @param sequence The write sequence
+     * @return True if the change still has to be applied, false if a document from the sync already contained it
+     */
+    public synchronized boolean applied(Object key, long sequence) {
+        Deque<Write> keyWrites = writes.get(key);
+        if (keyWrites == null) {
+            return false;
+        }
+        for (Write write : keyWrites) {
+            if (write.sequence == sequence) {
+                write.applied = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the cached writes that a document from the sync does not contain yet
+     * @param key The team ID or player UUID
+     * @param acknowledged The last write sequence of this server in the document
+     * @return The combined change of these writes, or null if there are none
+     */
+    public synchronized PointDelta unacknowledged(Object key, long acknowledged) {
+        Deque<Write> keyWrites = writes.get(key);
+        if (keyWrites == null) {
+            return null;
+        }
+
+        PointDelta combined = null;
+        for (Iterator<Write> iterator = keyWrites.iterator(); iterator.hasNext(); ) {
+            Write write = iterator.next();
+            if (write.sequence <= acknowledged) {
+                iterator.remove();
+            } else if (write.applied) {
+                combined = combined == null ? write.delta : combined.then(write.delta);
+            }
+        }
+        if (keyWrites.isEmpty()) {
+            writes.remove(key);
+        }
+        return combined;
+    }
+
+    /**
+     * Forget the writes of some keys, after their documents were deleted
+     * @param keys Selects the team IDs or player UUIDs
+     */
+    public synchronized void clear(Predicate<Object> keys) {
+        writes.keySet().removeIf(keys);
+    }
+
+    private static final class Write {
+        final long sequence;
+        final PointDelta delta;
+        boolean applied;
+
+        Write(long sequence, PointDelta delta, boolean applied) {
+            this.sequence = sequence;
+            this.delta = delta;
+            this.applied = applied;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package org.emrage.twitchbattleapi.storage;
+
+import org.bukkit.Bukkit;
+import org.emrage.twitchbattleapi.TwitchBattleAPI;
+import org.emrage.twitchbattleapi.points.PointDelta;
+import org.emrage.twitchbattleapi.teams.Team;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Storage wrapper that finds storage calls made on the server thread. Each of
+ * these blocks the current tick until the storage answers. The blocked time is
+ * summed per call site, i.e. the first caller outside this API, and per tick.
+ * Calls from other threads are passed through unchanged.
+ */
+public class BlockingCallDetector implements StorageBackend {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+    private static final String API_PACKAGE = TwitchBattleAPI.class.getPackageName() + ".";
+    private static final String STORAGE_PACKAGE = BlockingCallDetector.class.getPackageName() + ".";
+
+    private final StorageBackend delegate;
+    private final int stackSampleInterval;
+    private final StackWalker walker = StackWalker.getInstance();
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+
+    // Guarded by this, written by the server thread only
+    private final Map<String, CallSite> callSites = new HashMap<>();
+    private long blockedCalls;
+    private long blockedNanos;
+    private long maxBlockedNanos;
+    private int currentTick = -1;
+    private long currentTickNanos;
+    private long ticksAffected;
+    private long ticksOverBudget;
+    private long maxTickNanos;
+
+    /**
+     * Statistics of one place that calls the storage on the server thread
+     */
+    public static final class CallSite {
+        private final String location;
+        private final Map<String, Long> operations = new HashMap<>();
+        private long calls;
+        private long blockedNanos;
+        private long maxBlockedNanos;
+        private StackTraceElement[] sampleStack;
+
+        private CallSite(String location) {
+            this.location = location;
+        }
+
+        private CallSite(CallSite other) {
+            this.location = other.location;
+            this.operations.putAll(other.operations);
+            this.calls = other.calls;
+            this.blockedNanos = other.blockedNanos;
+            this.maxBlockedNanos = other.maxBlockedNanos;
+            this.sampleStack = other.sampleStack;
+        }
+
+        /**
+         * Get the calling code
+         * @return The stack frame, e.g. com.example.Plugin.onKill(Plugin.java:42)
+         */
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * Get the number of calls of each storage operation
+         * @return Operation name to number of calls
+         */
+        public Map<String, Long> getOperations() {
+            return operations;
+        }
+
+        /**
+         * Get the number of blocking calls
+         * @return The number of calls
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Get the total time the server thread was blocked
+         * @return The time in nanoseconds
+         */
+        public long getBlockedNanos() {
+            return blockedNanos;
+        }
+
+        /**
+         * Get the longest time a single call blocked the server thread
+         * @return The time in nanoseconds
+         */
+        public long getMaxBlockedNanos() {
+            return maxBlockedNanos;
+        }
+
+        /**
+         * Get the most recently sampled stack of a call
+         * @return The stack, starting at this API
+         */
+        public StackTraceElement[] getSampleStack() {
+            return sampleStack;
+        }
+    }
+
+    /**
+     * Create a new detector
+     * @param delegate The storage that is used
+     * @param stackSampleInterval Capture the full stack of every n-th call of a call site, the first call is always captured
+     */
+    public BlockingCallDetector(StorageBackend delegate, int stackSampleInterval) {
+        this.delegate = delegate;
+        this.stackSampleInterval = Math.max(1, stackSampleInterval);
+    }
+
+    /**
+     * Get the storage that is used
+     * @return The storage
+     */
+    public StorageBackend getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the number of storage calls made on the server thread
+     * @return The number of calls
+     */
+    public synchronized long getBlockedCalls() {
+        return blockedCalls;
+    }
+
+    /**
+     * Get the total time taken from ticks by storage calls
+     * @return The time in nanoseconds
+     */
+    public synchronized long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * Get the longest time a single call blocked the server thread
+     * @return The time in nanoseconds
+     */
+    public synchronized long getMaxBlockedNanos() {
+        return maxBlockedNanos;
+    }
+
+    /**
+     * Get the number of ticks in which the server thread was blocked by storage calls
+     * @return The number of ticks
+     */
+    public synchronized long getTicksAffected() {
+        return ticksAffected;
+    }
+
+    /**
+     * Get the number of ticks in which storage calls alone took longer than a whole tick (50 ms)
+     * @return The number of ticks
+     */
+    public synchronized long getTicksOverBudget() {
+        return ticksOverBudget;
+    }
+
+    /**
+     * Get the most time taken from a single tick by storage calls
+     * @return The time in nanoseconds
+     */
+    public synchronized long getMaxTickNanos() {
+        return Math.max(maxTickNanos, currentTickNanos);
+    }
+
+    /**
+     * Get the call sites, the ones that blocked longest first
+     * @return Copies of the call site statistics
+     */
+    public synchronized List<CallSite> getCallSites() {
+        List<CallSite> sites = new ArrayList<>(callSites.size());
+        for (CallSite site : callSites.values()) {
+            sites.add(new CallSite(site));
+        }
+        sites.sort((a, b) -> Long.compare(b.blockedNanos, a.blockedNanos));
+        return sites;
+    }
+
+    /**
+     * Reset all statistics
+     */
+    public synchronized void reset() {
+        callSites.clear();
+        blockedCalls = 0;
+        blockedNanos = 0;
+        maxBlockedNanos = 0;
+        currentTick = -1;
+        currentTickNanos = 0;
+        ticksAffected = 0;
+        ticksOverBudget = 0;
+        maxTickNanos = 0;
+    }
+
+    /**
+     * Log the totals and the call sites that blocked longest
+     * @param limit Maximum number of call sites
+     */
+    public void logReport(int limit) {
+        List<CallSite> sites = getCallSites();
+        StringBuilder report = new StringBuilder();
+        synchronized (this) {
+            report.append("Storage calls on the server thread: ").append(blockedCalls).append(" calls, ")
+                    .append(millis(blockedNanos)).append(" ms blocked in ").append(ticksAffected).append(" ticks, longest tick ")
+                    .append(millis(Math.max(maxTickNanos, currentTickNanos))).append(" ms, ")
+                    .append(ticksOverBudget).append(" ticks over 50 ms");
+        }
+        for (int i = 0; i < Math.min(limit, sites.size()); i++) {
+            CallSite site = sites.get(i);
+            report.append("\n  ").append(site.location).append(": ").append(site.calls).append(" calls, ")
+                    .append(millis(site.blockedNanos)).append(" ms, max ").append(millis(site.maxBlockedNanos))
+                    .append(" ms ").append(site.operations);
+        }
+        logger.info(report.toString());
+    }
+
+    private <T> T call(String operation, Supplier<T> call) {
+        if (!Bukkit.isPrimaryThread()) {
+            return call.get();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            record(operation, System.nanoTime() - start);
+        }
+    }
+
+    private void record(String operation, long duration) {
+        String location = walker.walk(frames -> {
+            String firstOutsideStorage = null;
+            for (StackWalker.StackFrame frame : (Iterable<StackWalker.StackFrame>) frames::iterator) {
+                String className = frame.getClassName();
+                if (!className.startsWith(API_PACKAGE)) {
+                    return frame.toStackTraceElement().toString();
+                }
+                if (firstOutsideStorage == null && !className.startsWith(STORAGE_PACKAGE)) {
+                    firstOutsideStorage = frame.toStackTraceElement().toString();
+                }
+            }
+            // Called by the API itself, e.g. from a scheduled task
+            return firstOutsideStorage != null ? firstOutsideStorage : "unknown";
+        });
+
+        boolean firstCall;
+        synchronized (this) {
+            blockedCalls++;
+            blockedNanos += duration;
+            maxBlockedNanos = Math.max(maxBlockedNanos, duration);
+
+            int tick = Bukkit.getCurrentTick();
+            if (tick != currentTick) {
+                maxTickNanos = Math.max(maxTickNanos, currentTickNanos);
+                currentTick = tick;
+                currentTickNanos = 0;
+                ticksAffected++;
+            }
+            long before = currentTickNanos;
+            currentTickNanos += duration;
+            if (before < TICK_NANOS && currentTickNanos >= TICK_NANOS) {
+                ticksOverBudget++;
+            }
+
+            CallSite site = callSites.computeIfAbsent(location, CallSite::new);
+            firstCall = site.calls == 0;
+            if (site.calls % stackSampleInterval == 0) {
+                site.sampleStack = new Throwable().getStackTrace();
+            }
+            site.calls++;
+            site.blockedNanos += duration;
+            site.maxBlockedNanos = Math.max(site.maxBlockedNanos, duration);
+            site.operations.merge(operation, 1L, Long::sum);
+        }
+
+        if (firstCall) {
+            logger.warning("Storage call " + operation + " blocked the server thread for " + millis(duration)
+                    + " ms, called at " + location + ". Use the async methods of the API instead.");
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+
+    @Override
+    public boolean open() {
+        return delegate.open();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean loadTeams(TeamConsumer action) {
+        return call("loadTeams", () -> delegate.loadTeams(action));
+    }
+
+    @Override
+    public Object insertTeam(Team team) {
+        return call("insertTeam", () -> delegate.insertTeam(team));
+    }
+
+    @Override
+    public boolean updateTeam(Team team) {
+        return call("updateTeam", () -> delegate.updateTeam(team));
+    }
+
+    @Override
+    public boolean deleteTeam(int teamId) {
+        return call("deleteTeam", () -> delegate.deleteTeam(teamId));
+    }
+
+    @Override
+    public boolean reserveTeamIdsUpTo(int usedId) {
+        return call("reserveTeamIdsUpTo", () -> delegate.reserveTeamIdsUpTo(usedId));
+    }
+
+    @Override
+    public long reserveTeamIds(int count) {
+        return call("reserveTeamIds", () -> delegate.reserveTeamIds(count));
+    }
+
+    @Override
+    public boolean loadPlayers(boolean teamsOnly, PlayerConsumer action) {
+        return call("loadPlayers", () -> delegate.loadPlayers(teamsOnly, action));
+    }
+
+    @Override
+    public boolean loadPlayersSince(long since, PlayerConsumer action) {
+        return call("loadPlayersSince", () -> delegate.loadPlayersSince(since, action));
+    }
+
+    @Override
+    public String getPlayerName(UUID playerUUID) {
+        return call("getPlayerName", () -> delegate.getPlayerName(playerUUID));
+    }
+
+    @Override
+    public Collection<UUID> ensurePlayers(Map<UUID, String> usernames) {
+        return call("ensurePlayers", () -> delegate.ensurePlayers(usernames));
+    }
+
+    @Override
+    public Collection<UUID> setPlayerTeams(Map<UUID, Integer> teams, Map<UUID, String> usernames) {
+        return call("setPlayerTeams", () -> delegate.setPlayerTeams(teams, usernames));
+    }
+
+    @Override
+    public boolean removePlayersFromTeams(Collection<UUID> players) {
+        return call("removePlayersFromTeams", () -> delegate.removePlayersFromTeams(players));
+    }
+
+    @Override
+    public boolean clearTeam(int teamId) {
+        return call("clearTeam", () -> delegate.clearTeam(teamId));
+    }
+
+    @Override
+    public boolean loadPoints(PointsConsumer action) {
+        return call("loadPoints", () -> delegate.loadPoints(action));
+    }
+
+    @Override
+    public boolean loadPointsSince(long since, PointsConsumer action) {
+        return call("loadPointsSince", () -> delegate.loadPointsSince(since, action));
+    }
+
+    @Override
+    public Collection<Object> writePoints(Map<?, PointDelta> batch) {
+        return call("writePoints", () -> delegate.writePoints(batch));
+    }
+
+    @Override
+    public boolean deletePoints(boolean teams) {
+        return call("deletePoints", () -> delegate.deletePoints(teams));
+    }
+}
@@ -0,0 +1,637 @@
+package org.emrage.twitchbattleapi.storage;
+
+import org.emrage.twitchbattleapi.points.PointDelta;
+import org.emrage.twitchbattleapi.teams.Team;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores teams, players and points in files in the plugin folder, for servers without a MongoDB.
+ * All data is kept in memory. Every change is appended to a journal before it is applied.
+ * After a number of changes the journal is set aside as journal.N.tsv and a new one is
+ * started, while a background thread writes the complete state to a snapshot and then
+ * deletes the journals it contains. On startup the snapshot is read and the journals are
+ * replayed in order. Journal entries hold absolute values, so replaying an entry twice
+ * has no effect.
+ */
+public class LocalStorage implements StorageBackend {
+    private static final String SNAPSHOT_FILE = "snapshot.tsv";
+    private static final String JOURNAL_FILE = "journal.tsv";
+    private static final Pattern ROTATED_JOURNAL = Pattern.compile("journal\\.(\\d+)\\.tsv");
+    private static final String NULL = "\\N";
+
+    // Journal entry types
+    private static final String TEAM = "T";
+    private static final String DELETE_TEAM = "D";
+    private static final String PLAYER = "P";
+    private static final String CLEAR_TEAM = "C";
+    private static final String POINTS = "S";
+    private static final String RESET_POINTS = "R";
+    private static final String TEAM_ID_COUNTER = "N";
+
+    private final File directory;
+    private final int snapshotInterval;
+    private final boolean fsync;
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+
+    private final Map<Integer, TeamRecord> teams = new LinkedHashMap<>();
+    private final Map<UUID, PlayerRecord> players = new HashMap<>();
+    private final Map<Object, Long> points = new HashMap<>();
+    private long teamIdCounter;
+
+    private FileOutputStream journalStream;
+    private Writer journal;
+    private int entriesSinceSnapshot;
+    private int lastRotation;
+    private ExecutorService compactor;
+    // Cleared by the compactor without the lock, so close() can wait for it while holding the lock
+    private volatile boolean compacting;
+
+    /**
+     * Create a new local storage
+     * @param directory The directory for the snapshot and journal
+     * @param snapshotInterval Number of journal entries after which a snapshot is written
+     * @param fsync Whether to force every change to disk before returning
+     */
+    public LocalStorage(File directory, int snapshotInterval, boolean fsync) {
+        this.directory = directory;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        this.fsync = fsync;
+    }
+
+    @Override
+    public synchronized boolean open() {
+        try {
+            Files.createDirectories(directory.toPath());
+            replay(new File(directory, SNAPSHOT_FILE));
+            // Journals set aside by a compaction that did not finish, then the current one
+            entriesSinceSnapshot = 0;
+            for (Map.Entry<Integer, File> rotated : rotatedJournals().entrySet()) {
+                truncateTornLine(rotated.getValue());
+                entriesSinceSnapshot += replay(rotated.getValue());
+                lastRotation = rotated.getKey();
+            }
+            truncateTornLine(new File(directory, JOURNAL_FILE));
+            entriesSinceSnapshot += replay(new File(directory, JOURNAL_FILE));
+            openJournal(true);
+            compactor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "TwitchBattleAPI-LocalStorage");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Loaded local storage with " + teams.size() + " teams, " + players.size() + " players and "
+                    + points.size() + " point entries");
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to open local storage in " + directory, e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            journal.close();
+            // Start the next run from a snapshot, so the journals don't have to be replayed
+            writeSnapshot(new State(this));
+            deleteRotatedJournals(Integer.MAX_VALUE);
+            Files.deleteIfExists(new File(directory, JOURNAL_FILE).toPath());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to close local storage", e);
+        }
+        journal = null;
+        journalStream = null;
+    }
+
+    @Override
+    public synchronized boolean loadTeams(TeamConsumer action) {
+        for (Map.Entry<Integer, TeamRecord> entry : teams.entrySet()) {
+            TeamRecord record = entry.getValue();
+            action.accept(new Team(entry.getKey(), record.name, record.displayName, record.color), entry.getKey());
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Object insertTeam(Team team) {
+        return write(teamEntry(team.getId(), team.getName(), team.getDisplayName(), team.getColor())) ? team.getId() : null;
+    }
+
+    @Override
+    public synchronized boolean updateTeam(Team team) {
+        if (!teams.containsKey(team.getId())) {
+            return true;
+        }
+        return write(teamEntry(team.getId(), team.getName(), team.getDisplayName(), team.getColor()));
+    }
+
+    @Override
+    public synchronized boolean deleteTeam(int teamId) {
+        return write(Collections.singletonList(new String[]{DELETE_TEAM, String.valueOf(teamId)}));
+    }
+
+    @Override
+    public synchronized boolean reserveTeamIdsUpTo(int usedId) {
+        if (teamIdCounter >= usedId) {
+            return true;
+        }
+        return write(counterEntry(usedId));
+    }
+
+    @Override
+    public synchronized long reserveTeamIds(int count) {
+        long last = teamIdCounter + count;
+        return write(counterEntry(last)) ? last : -1L;
+    }
+
+    @Override
+    public synchronized boolean loadPlayers(boolean teamsOnly, PlayerConsumer action) {
+        for (Map.Entry<UUID, PlayerRecord> entry : players.entrySet()) {
+            PlayerRecord record = entry.getValue();
+            if (!teamsOnly || record.teamId != NO_TEAM) {
+                action.accept(entry.getKey(), record.username, record.teamId);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized String getPlayerName(UUID playerUUID) {
+        PlayerRecord record = players.get(playerUUID);
+        return record != null ? record.username : null;
+    }
+
+    @Override
+    public synchronized Collection<UUID> ensurePlayers(Map<UUID, String> usernames) {
+        List<String[]> entries = new ArrayList<>();
+        for (Map.Entry<UUID, String> entry : usernames.entrySet()) {
+            if (!players.containsKey(entry.getKey())) {
+                entries.add(playerEntry(entry.getKey(), entry.getValue(), NO_TEAM));
+            }
+        }
+        return write(entries) ? List.of() : new ArrayList<>(usernames.keySet());
+    }
+
+    @Override
+    public synchronized Collection<UUID> setPlayerTeams(Map<UUID, Integer> teams, Map<UUID, String> usernames) {
+        List<String[]> entries = new ArrayList<>(teams.size());
+        for (Map.Entry<UUID, Integer> entry : teams.entrySet()) {
+            UUID playerUUID = entry.getKey();
+            String username = usernames.get(playerUUID);
+            if (username == null) {
+                PlayerRecord record = players.get(playerUUID);
+                username = record != null ? record.username : playerUUID.toString();
+            }
+            entries.add(playerEntry(playerUUID, username, entry.getValue()));
+        }
+        return write(entries) ? List.of() : new ArrayList<>(teams.keySet());
+    }
+
+    @Override
+    public synchronized boolean removePlayersFromTeams(Collection<UUID> players) {
+        List<String[]> entries = new ArrayList<>(players.size());
+        for (UUID playerUUID : players) {
+            PlayerRecord record = this.players.get(playerUUID);
+            if (record != null && record.teamId != NO_TEAM) {
+                entries.add(playerEntry(playerUUID, record.username, NO_TEAM));
+            }
+        }
+        return write(entries);
+    }
+
+    @Override
+    public synchronized boolean clearTeam(int teamId) {
+        return write(Collections.singletonList(new String[]{CLEAR_TEAM, String.valueOf(teamId)}));
+    }
+
+    @Override
+    public synchronized boolean loadPoints(PointsConsumer action) {
+        for (Map.Entry<Object, Long> entry : points.entrySet()) {
+            action.accept(entry.getKey(), entry.getValue(), entry.getKey());
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Collection<Object> writePoints(Map<?, PointDelta> batch) {
+        // Relative changes are stored as their result, so the journal can be replayed safely
+        List<String[]> entries = new ArrayList<>(batch.size());
+        for (Map.Entry<?, PointDelta> entry : batch.entrySet()) {
+            PointDelta delta = entry.getValue();
+            long current = points.getOrDefault(entry.getKey(), 0L);
+            long value = delta.isAbsolute() ? delta.getValue() : current + delta.getValue();
+            entries.add(new String[]{POINTS, formatKey(entry.getKey()), String.valueOf(value)});
+        }
+        return write(entries) ? List.of() : new ArrayList<>(batch.keySet());
+    }
+
+    @Override
+    public synchronized boolean deletePoints(boolean teams) {
+        return write(Collections.singletonList(new String[]{RESET_POINTS, teams ? "t" : "p"}));
+    }
+
+    private static List<String[]> teamEntry(int id, String name, String displayName, String color) {
+        return Collections.singletonList(new String[]{TEAM, String.valueOf(id), name, displayName, color});
+    }
+
+    private static String[] playerEntry(UUID playerUUID, String username, int teamId) {
+        return new String[]{PLAYER, playerUUID.toString(), username, String.valueOf(teamId)};
+    }
+
+    private static List<String[]> counterEntry(long value) {
+        return Collections.singletonList(new String[]{TEAM_ID_COUNTER, String.valueOf(value)});
+    }
+
+    /**
+     * Append entries to the journal and apply them. Must hold the lock.
+     * @param entries The entries
+     * @return True if the entries were written, false otherwise
+     */
+    private boolean write(List<String[]> entries) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        if (journal == null) {
+            logger.severe("Local storage is not open");
+            return false;
+        }
+
+        try {
+            for (String[] entry : entries) {
+                writeLine(journal, entry);
+            }
+            journal.flush();
+            if (fsync) {
+                journalStream.getFD().sync();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to write to local storage", e);
+            return false;
+        }
+
+        for (String[] entry : entries) {
+            apply(entry);
+        }
+
+        entriesSinceSnapshot += entries.size();
+        if (entriesSinceSnapshot >= snapshotInterval && !compacting) {
+            startCompaction();
+        }
+        return true;
+    }
+
+    /**
+     * Set the journal aside and write a snapshot of the current state in the background. Must hold the lock.
+     */
+    private void startCompaction() {
+        int rotation = lastRotation + 1;
+        try {
+            journal.close();
+            Files.move(new File(directory, JOURNAL_FILE).toPath(), rotatedJournal(rotation).toPath());
+            lastRotation = rotation;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to set the local storage journal aside, trying again after the next change", e);
+        }
+        try {
+            openJournal(true);
+        } catch (IOException e) {
+            journal = null;
+            logger.log(Level.SEVERE, "Failed to reopen the local storage journal", e);
+            return;
+        }
+        if (lastRotation != rotation) {
+            return;
+        }
+
+        // Copying the state is cheap, formatting and syncing it happens on the background thread
+        State state = new State(this);
+        compacting = true;
+        entriesSinceSnapshot = 0;
+        compactor.execute(() -> {
+            try {
+                writeSnapshot(state);
+                deleteRotatedJournals(rotation);
+            } catch (IOException e) {
+                // The journals still hold everything and are contained in the next snapshot
+                logger.log(Level.WARNING, "Failed to write local storage snapshot", e);
+            } finally {
+                compacting = false;
+            }
+        });
+    }
+
+    /**
+     * Apply a journal entry to the in-memory state
+     * @param entry The entry fields
+     */
+    private void apply(String[] entry) {
+        switch (entry[0]) {
+            case TEAM -> teams.put(Integer.parseInt(entry[1]), new TeamRecord(entry[2], entry[3], entry[4]));
+            case DELETE_TEAM -> {
+                int teamId = Integer.parseInt(entry[1]);
+                teams.remove(teamId);
+                clearMembers(teamId);
+            }
+            case PLAYER -> players.put(UUID.fromString(entry[1]), new PlayerRecord(entry[2], Integer.parseInt(entry[3])));
+            case CLEAR_TEAM -> clearMembers(Integer.parseInt(entry[1]));
+            case POINTS -> points.put(parseKey(entry[1]), Long.parseLong(entry[2]));
+            case RESET_POINTS -> {
+                boolean teamPoints = entry[1].equals("t");
+                points.keySet().removeIf(key -> (key instanceof Integer) == teamPoints);
+            }
+            case TEAM_ID_COUNTER -> teamIdCounter = Math.max(teamIdCounter, Long.parseLong(entry[1]));
+            default -> throw new IllegalArgumentException("Unknown entry type " + entry[0]);
+        }
+    }
+
+    private void clearMembers(int teamId) {
+        for (Map.Entry<UUID, PlayerRecord> player : players.entrySet()) {
+            if (player.getValue().teamId == teamId) {
+                player.setValue(new PlayerRecord(player.getValue().username, NO_TEAM));
+            }
+        }
+    }
+
+    /**
+     * Cut off a last line left incomplete by a crash while it was written. Otherwise it could
+     * be read with a truncated value, and the next entry appended to the journal would continue it.
+     * @param file The journal
+     */
+    private void truncateTornLine(File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long complete = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            // Search backwards for the end of the last complete line
+            for (long end = size; end > 0 && complete == 0; ) {
+                long start = Math.max(0, end - buffer.capacity());
+                buffer.clear().limit((int) (end - start));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        complete = start + i + 1;
+                        break;
+                    }
+                }
+                end = start;
+            }
+
+            if (complete < size) {
+                logger.warning("Dropping " + (size - complete) + " bytes of an incomplete entry at the end of " + file.getName());
+                channel.truncate(complete);
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot or journal and apply its entries
+     * @param file The file
+     * @return The number of entries applied
+     */
+    private int replay(File file) throws IOException {
+        if (!file.isFile()) {
+            return 0;
+        }
+
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(parseLine(line));
+                    count++;
+                } catch (RuntimeException e) {
+                    // A damaged entry, the others are still usable
+                    logger.warning("Skipping unreadable entry in " + file.getName() + " line " + lineNumber);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write a state to the snapshot. Runs on the compactor, or in {@link #close()} once the compactor has stopped.
+     * @param state Copy of the state
+     */
+    private void writeSnapshot(State state) throws IOException {
+        File temp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writeLine(writer, new String[]{TEAM_ID_COUNTER, String.valueOf(state.teamIdCounter)});
+            for (Map.Entry<Integer, TeamRecord> team : state.teams.entrySet()) {
+                TeamRecord record = team.getValue();
+                writeLine(writer, new String[]{TEAM, String.valueOf(team.getKey()), record.name, record.displayName, record.color});
+            }
+            for (Map.Entry<UUID, PlayerRecord> player : state.players.entrySet()) {
+                writeLine(writer, playerEntry(player.getKey(), player.getValue().username, player.getValue().teamId));
+            }
+            for (Map.Entry<Object, Long> entry : state.points.entrySet()) {
+                writeLine(writer, new String[]{POINTS, formatKey(entry.getKey()), String.valueOf(entry.getValue())});
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+
+        // Replace the snapshot atomically, the caller then drops the journals it contains.
+        // A crash in between replays these journals on top of the new snapshot, which changes nothing.
+        Files.move(temp.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the journals set aside for compaction
+     * @return The journals by number, in the order they were written
+     */
+    private NavigableMap<Integer, File> rotatedJournals() {
+        NavigableMap<Integer, File> journals = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = ROTATED_JOURNAL.matcher(file.getName());
+                if (matcher.matches()) {
+                    journals.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+        }
+        return journals;
+    }
+
+    private File rotatedJournal(int number) {
+        return new File(directory, "journal." + number + ".tsv");
+    }
+
+    /**
+     * Delete the journals that are contained in the snapshot
+     * @param upTo Number of the last journal contained
+     */
+    private void deleteRotatedJournals(int upTo) throws IOException {
+        for (Map.Entry<Integer, File> rotated : rotatedJournals().headMap(upTo, true).entrySet()) {
+            Files.deleteIfExists(rotated.getValue().toPath());
+        }
+    }
+
+    private void openJournal(boolean append) throws IOException {
+        journalStream = new FileOutputStream(new File(directory, JOURNAL_FILE), append);
+        journal = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+    }
+
+    private static String formatKey(Object key) {
+        return key instanceof Integer ? "t:" + key : "p:" + key;
+    }
+
+    private static Object parseKey(String key) {
+        String value = key.substring(2);
+        return key.startsWith("t:") ? (Object) Integer.parseInt(value) : UUID.fromString(value);
+    }
+
+    private static void writeLine(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            writer.write(escape(fields[i]));
+        }
+        writer.write('\n');
+    }
+
+    private static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        for (String field : line.split("\t", -1)) {
+            fields.add(unescape(field));
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> builder.append("\\\\");
+                case '\t' -> builder.append("\\t");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                default -> builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.equals(NULL)) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw new IllegalArgumentException("Incomplete escape sequence");
+            }
+            switch (value.charAt(i)) {
+                case 't' -> builder.append('\t');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                default -> builder.append(value.charAt(i));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Copy of the state, written to the snapshot without holding the lock
+     */
+    private static final class State {
+        final long teamIdCounter;
+        final Map<Integer, TeamRecord> teams;
+        final Map<UUID, PlayerRecord> players;
+        final Map<Object, Long> points;
+
+        State(LocalStorage storage) {
+            this.teamIdCounter = storage.teamIdCounter;
+            this.teams = new LinkedHashMap<>(storage.teams);
+            this.players = new HashMap<>(storage.players);
+            this.points = new HashMap<>(storage.points);
+        }
+    }
+
+    private static final class TeamRecord {
+        final String name;
+        final String displayName;
+        final String color;
+
+        TeamRecord(String name, String displayName, String color) {
+            this.name = name;
+            this.displayName = displayName;
+            this.color = color;
+        }
+    }
+
+    private static final class PlayerRecord {
+        final String username;
+        final int teamId;
+
+        PlayerRecord(String username, int teamId) {
+            this.username = username;
+            this.teamId = teamId;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.emrage.twitchbattleapi.storage;
+
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.emrage.twitchbattleapi.database.DatabaseManager;
+import org.emrage.twitchbattleapi.points.PointDelta;
+import org.emrage.twitchbattleapi.teams.Team;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores teams, players and points in MongoDB
+ */
+public class MongoStorage implements StorageBackend {
+    private static final Document TEAM_ID_COUNTER = new Document("_id", "team_id");
+    private static final Document POINTS_RESET = new Document("_id", "points_reset");
+
+    private final DatabaseManager databaseManager;
+
+    /**
+     * Create a new MongoDB storage
+     * @param databaseManager The database manager, connected by {@link #open()}
+     */
+    public MongoStorage(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public boolean open() {
+        databaseManager.connect();
+        if (databaseManager.getDatabase() == null) {
+            return false;
+        }
+        databaseManager.createTables();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        databaseManager.disconnect();
+    }
+
+    @Override
+    public boolean loadTeams(TeamConsumer action) {
+        Document projection = new Document("id", 1).append("name", 1).append("display_name", 1).append("color", 1);
+        return databaseManager.forEach("teams", new Document(), projection, doc -> {
+            Team team = new Team(doc.getInteger("id", 0), doc.getString("name"), doc.getString("display_name"), doc.getString("color"));
+            action.accept(team, doc.get("_id"));
+        });
+    }
+
+    @Override
+    public Object insertTeam(Team team) {
+        Document teamDoc = new Document()
+                .append("id", team.getId())
+                .append("name", team.getName())
+                .append("display_name", team.getDisplayName())
+                .append("color", team.getColor())
+                .append("created_at", new Date())
+                .append("last_updated", new Date());
+
+        // The driver adds the generated _id to the document
+        return databaseManager.insertOne("teams", teamDoc) ? teamDoc.get("_id") : null;
+    }
+
+    @Override
+    public boolean updateTeam(Team team) {
+        Document update = new Document()
+                .append("name", team.getName())
+                .append("display_name", team.getDisplayName())
+                .append("color", team.getColor())
+                .append("last_updated", new Date());
+        return databaseManager.updateOne("teams", new Document("id", team.getId()), update);
+    }
+
+    @Override
+    public boolean deleteTeam(int teamId) {
+        if (!databaseManager.deleteOne("teams", new Document("id", teamId))) {
+            return false;
+        }
+
+        // Remove the team association of all members in one update. If that fails, the delete fails too,
+        // so members never point to a deleted team unnoticed. Deleting the document again on retry is harmless.
+        return clearTeam(teamId);
+    }
+
+    @Override
+    public boolean reserveTeamIdsUpTo(int usedId) {
+        return databaseManager.upsert("counters", TEAM_ID_COUNTER, new Document("$max", new Document("value", (long) usedId)));
+    }
+
+    @Override
+    public long reserveTeamIds(int count) {
+        Document counter = databaseManager.findOneAndUpdate("counters", TEAM_ID_COUNTER,
+                new Document("$inc", new Document("value", (long) count)), true);
+        Object value = counter != null ? counter.get("value") : null;
+        return value instanceof Number ? ((Number) value).longValue() : -1L;
+    }
+
+    @Override
+    public boolean loadPlayers(boolean teamsOnly, PlayerConsumer action) {
+        return loadPlayers(teamsOnly ? new Document("team_id", new Document("$ne", null)) : new Document(), action);
+    }
+
+    @Override
+    public boolean loadPlayersSince(long since, PlayerConsumer action) {
+        return loadPlayers(changedSince(since), action);
+    }
+
+    private boolean loadPlayers(Document filter, PlayerConsumer action) {
+        Document projection = new Document("uuid", 1).append("username", 1).append("team_id", 1).append("_id", 0);
+        return databaseManager.forEach("players", filter, projection, doc -> {
+            String uuid = doc.getString("uuid");
+            if (uuid != null) {
+                Integer teamId = doc.getInteger("team_id");
+                action.accept(UUID.fromString(uuid), doc.getString("username"), teamId != null ? teamId : NO_TEAM);
+            }
+        });
+    }
+
+    @Override
+    public String getPlayerName(UUID playerUUID) {
+        Document doc = databaseManager.findOne("players", new Document("uuid", playerUUID.toString()));
+        return doc != null ? doc.getString("username") : null;
+    }
+
+    @Override
+    public Collection<UUID> ensurePlayers(Map<UUID, String> usernames) {
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+        List<UUID> players = new ArrayList<>(usernames.keySet());
+        List<WriteModel<Document>> writes = new ArrayList<>(players.size());
+        for (UUID playerUUID : players) {
+            // An existing player, e.g. inserted by another server, stays unchanged
+            writes.add(new UpdateOneModel<>(
+                    new Document("uuid", playerUUID.toString()),
+                    new Document("$setOnInsert", new Document("username", usernames.get(playerUUID)).append("last_updated", new Date())),
+                    upsert));
+        }
+        return failedKeys(players, databaseManager.bulkWrite("players", writes, false));
+    }
+
+    @Override
+    public Collection<UUID> setPlayerTeams(Map<UUID, Integer> teams, Map<UUID, String> usernames) {
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+        List<UUID> players = new ArrayList<>(teams.keySet());
+        List<WriteModel<Document>> writes = new ArrayList<>(players.size());
+        for (UUID playerUUID : players) {
+            Document set = new Document("team_id", teams.get(playerUUID)).append("last_updated", new Date());
+            Document update = new Document("$set", set);
+            String username = usernames.get(playerUUID);
+            if (username != null) {
+                set.append("username", username);
+            } else {
+                update.append("$setOnInsert", new Document("username", playerUUID.toString()));
+            }
+            writes.add(new UpdateOneModel<>(new Document("uuid", playerUUID.toString()), update, upsert));
+        }
+        return failedKeys(players, databaseManager.bulkWrite("players", writes, false));
+    }
+
+    @Override
+    public boolean removePlayersFromTeams(Collection<UUID> players) {
+        List<String> uuids = new ArrayList<>(players.size());
+        for (UUID playerUUID : players) {
+            uuids.add(playerUUID.toString());
+        }
+
+        Document filter = players.size() == 1
+                ? new Document("uuid", uuids.get(0))
+                : new Document("uuid", new Document("$in", uuids));
+        return databaseManager.updateMany("players", filter, noTeam());
+    }
+
+    @Override
+    public boolean clearTeam(int teamId) {
+        return databaseManager.updateMany("players", new Document("team_id", teamId), noTeam());
+    }
+
+    private static Document noTeam() {
+        return new Document("team_id", null).append("last_updated", new Date());
+    }
+
+    @Override
+    public boolean loadPoints(PointsConsumer action) {
+        return loadPoints(new Document(), action);
+    }
+
+    @Override
+    public boolean loadPointsSince(long since, PointsConsumer action) {
+        // Deleted documents leave no trace in last_updated, a reset since then needs a full load
+        Document reset = databaseManager.findOne("counters", POINTS_RESET);
+        Date resetAt = reset != null ? reset.getDate("last_updated") : null;
+        if (resetAt != null && resetAt.getTime() >= since) {
+            return false;
+        }
+        return loadPoints(changedSince(since), action);
+    }
+
+    private boolean loadPoints(Document filter, PointsConsumer action) {
+        // Team and player points share the collection, stream both in one pass
+        Document projection = new Document("team_id", 1).append("player_uuid", 1).append("points", 1);
+        return databaseManager.forEach("points", filter, projection, doc -> {
+            Object key = getKey(doc);
+            if (key != null) {
+                action.accept(key, getPoints(doc), doc.get("_id"));
+            }
+        });
+    }
+
+    @Override
+    public Collection<Object> writePoints(Map<?, PointDelta> batch) {
+        // Each team or player is updated atomically with a single upsert, all of them in one bulk write
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+        List<Object> keys = new ArrayList<>(batch.keySet());
+        List<WriteModel<Document>> writes = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            Document filter = key instanceof Integer teamId
+                    ? new Document("team_id", teamId)
+                    : new Document("player_uuid", key.toString());
+            writes.add(new UpdateOneModel<>(filter, batch.get(key).toUpdate(), upsert));
+        }
+        return failedKeys(keys, databaseManager.bulkWrite("points", writes, false));
+    }
+
+    @Override
+    public boolean deletePoints(boolean teams) {
+        // Mark the reset before deleting, so no warm start can miss it
+        if (!databaseManager.upsert("counters", POINTS_RESET, new Document("$set", new Document("last_updated", new Date())))) {
+            return false;
+        }
+        return databaseManager.deleteMany("points", new Document(teams ? "team_id" : "player_uuid", new Document("$ne", null)));
+    }
+
+    private static Document changedSince(long since) {
+        return new Document("last_updated", new Document("$gte", new Date(since)));
+    }
+
+    /**
+     * Get the team ID or player UUID of a points document
+     * @param doc The document
+     * @return The team ID, the player UUID, or null
+     */
+    public static Object getKey(Document doc) {
+        Integer teamId = doc.getInteger("team_id");
+        if (teamId != null) {
+            return teamId;
+        }
+        String playerUUID = doc.getString("player_uuid");
+        return playerUUID != null ? UUID.fromString(playerUUID) : null;
+    }
+
+    /**
+     * Read the points of a points document
+     * @param doc The document
+     * @return The points, stored as int32 or int64
+     */
+    public static long getPoints(Document doc) {
+        Object points = doc.get("points");
+        return points instanceof Number ? ((Number) points).longValue() : 0L;
+    }
+
+    /**
+     * Get the last write sequence of a server in a points document
+     * @param doc The document
+     * @param writerId The server ID
+     * @return The write sequence, or 0 if the server has not written the document
+     */
+    public static long getWriteSequence(Document doc, String writerId) {
+        Object writes = doc.get(PointDelta.WRITES_FIELD);
+        Object sequence = writes instanceof Document ? ((Document) writes).get(writerId) : null;
+        return sequence instanceof Number ? ((Number) sequence).longValue() : 0L;
+    }
+
+    private static <K> List<K> failedKeys(List<K> keys, List<Integer> failedIndices) {
+        List<K> failed = new ArrayList<>(failedIndices.size());
+        for (int index : failedIndices) {
+            failed.add(keys.get(index));
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,199 @@
+package org.emrage.twitchbattleapi.storage;
+
+import org.emrage.twitchbattleapi.points.PointDelta;
+import org.emrage.twitchbattleapi.teams.Team;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistence used by the team manager, the point system and the name cache.
+ * Points are keyed by team ID (Integer) or player UUID. Record IDs identify the
+ * stored records in change notifications, e.g. the _id of MongoDB documents.
+ * Implementations must be thread-safe; methods report failures through their
+ * return value and log them.
+ */
+public interface StorageBackend {
+    /**
+     * Team ID stored for players without a team
+     */
+    int NO_TEAM = -1;
+
+    /**
+     * Receives a stored team
+     */
+    @FunctionalInterface
+    interface TeamConsumer {
+        /**
+         * @param team The team, without members
+         * @param recordId ID of the stored record
+         */
+        void accept(Team team, Object recordId);
+    }
+
+    /**
+     * Receives a stored player
+     */
+    @FunctionalInterface
+    interface PlayerConsumer {
+        /**
+         * @param playerUUID The player UUID
+         * @param username The stored name, may be null
+         * @param teamId The team ID, or {@link #NO_TEAM}
+         */
+        void accept(UUID playerUUID, String username, int teamId);
+    }
+
+    /**
+     * Receives stored points
+     */
+    @FunctionalInterface
+    interface PointsConsumer {
+        /**
+         * @param key The team ID or player UUID
+         * @param points The points
+         * @param recordId ID of the stored record
+         */
+        void accept(Object key, long points, Object recordId);
+    }
+
+    /**
+     * Open the storage and create what is missing
+     * @return True if successful, false otherwise
+     */
+    boolean open();
+
+    /**
+     * Close the storage, writing everything that is buffered
+     */
+    void close();
+
+    /**
+     * Read all teams
+     * @param action Called for each team
+     * @return True if successful, false otherwise
+     */
+    boolean loadTeams(TeamConsumer action);
+
+    /**
+     * Store a new team
+     * @param team The team
+     * @return ID of the stored record, or null if it failed
+     */
+    Object insertTeam(Team team);
+
+    /**
+     * Store the name, display name and color of a team
+     * @param team The team
+     * @return True if successful, false otherwise
+     */
+    boolean updateTeam(Team team);
+
+    /**
+     * Delete a team and remove all players from it
+     * @param teamId The team ID
+     * @return True if successful, false otherwise
+     */
+    boolean deleteTeam(int teamId);
+
+    /**
+     * Make sure team IDs up to a value are never allocated
+     * @param usedId The highest ID in use
+     * @return True if successful, false otherwise
+     */
+    boolean reserveTeamIdsUpTo(int usedId);
+
+    /**
+     * Atomically reserve a block of team IDs
+     * @param count The number of IDs
+     * @return The last ID of the block, or -1 if it failed
+     */
+    long reserveTeamIds(int count);
+
+    /**
+     * Read all players
+     * @param teamsOnly Whether to only read players that are in a team
+     * @param action Called for each player
+     * @return True if successful, false otherwise
+     */
+    boolean loadPlayers(boolean teamsOnly, PlayerConsumer action);
+
+    /**
+     * Read the players that were created or changed since a point in time
+     * @param since Time in milliseconds
+     * @param action Called for each player
+     * @return True if successful, false if it failed or is not supported
+     */
+    default boolean loadPlayersSince(long since, PlayerConsumer action) {
+        return false;
+    }
+
+    /**
+     * Get the stored name of a player
+     * @param playerUUID The player UUID
+     * @return The name, or null if the player is not stored
+     */
+    String getPlayerName(UUID playerUUID);
+
+    /**
+     * Create players that don't exist yet. Existing players are left unchanged.
+     * @param usernames The name to store for each player
+     * @return The players that could not be written
+     */
+    Collection<UUID> ensurePlayers(Map<UUID, String> usernames);
+
+    /**
+     * Set the team of players, creating them if needed
+     * @param teams The team ID for each player UUID
+     * @param usernames The current name of players that are online, other players keep their stored name
+     * @return The players that could not be written
+     */
+    Collection<UUID> setPlayerTeams(Map<UUID, Integer> teams, Map<UUID, String> usernames);
+
+    /**
+     * Remove players from their teams
+     * @param players The player UUIDs
+     * @return True if successful, false otherwise
+     */
+    boolean removePlayersFromTeams(Collection<UUID> players);
+
+    /**
+     * Remove all players from a team
+     * @param teamId The team ID
+     * @return True if successful, false otherwise
+     */
+    boolean clearTeam(int teamId);
+
+    /**
+     * Read all points
+     * @param action Called for each team and player
+     * @return True if successful, false otherwise
+     */
+    boolean loadPoints(PointsConsumer action);
+
+    /**
+     * Read the points that were created or changed since a point in time.
+     * Deleted points can't be read this way, so this fails if points were reset since.
+     * @param since Time in milliseconds
+     * @param action Called for each team and player
+     * @return True if successful, false if it failed, is not supported or points were reset
+     */
+    default boolean loadPointsSince(long since, PointsConsumer action) {
+        return false;
+    }
+
+    /**
+     * Apply point changes, each atomically
+     * @param batch The changes by team ID or player UUID
+     * @return The keys whose changes could not be written
+     */
+    Collection<Object> writePoints(Map<?, PointDelta> batch);
+
+    /**
+     * Delete all team or all player points
+     * @param teams True to delete team points, false to delete player points
+     * @return True if successful, false otherwise
+     */
+    boolean deletePoints(boolean teams);
+}
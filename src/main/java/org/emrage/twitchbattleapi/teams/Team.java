@@ -1,7 +1,12 @@
 package org.emrage.twitchbattleapi.teams;
 
-import java.util.ArrayList;
+import org.emrage.twitchbattleapi.utils.ColorPalette;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -9,10 +14,12 @@ import java.util.UUID;
  */
 public class Team {
     private int id;
-    private String name;
-    private String displayName;
-    private String color;
-    private List<UUID> members;
+    private volatile String name;
+    private volatile String displayName;
+    private volatile String color;
+    // Copied on write, so readers on any thread get a consistent snapshot without locking
+    private volatile Set<UUID> members = Set.of();
+    private volatile CachedColor resolvedColor;
 
     /**
      * Create a new team
@@ -26,7 +33,6 @@ public class Team {
         this.name = name;
         this.displayName = displayName;
         this.color = color;
-        this.members = new ArrayList<>();
     }
 
     /**
@@ -86,10 +92,30 @@ public class Team {
     }
 
     /**
-     * Get the team members
-     * @return List of player UUIDs in the team
+     * Get the team color resolved to chat color codes.
+     * The result is cached together with the color it was resolved from, so a
+     * concurrent {@link #setColor(String)} never leaves an outdated result behind.
+     * @return The resolved color, or null if the color is not a valid hex color
+     */
+    public ColorPalette.Resolved getResolvedColor() {
+        String current = color;
+        if (current == null) {
+            return null;
+        }
+        CachedColor cached = resolvedColor;
+        if (cached == null || !cached.color().equals(current)) {
+            cached = new CachedColor(current, ColorPalette.resolve(current));
+            resolvedColor = cached;
+        }
+        return cached.resolved();
+    }
+
+    /**
+     * Get the team members.
+     * The set is an immutable snapshot, later changes to the team are not reflected.
+     * @return Set of player UUIDs in the team, in the order they joined
      */
-    public List<UUID> getMembers() {
+    public Set<UUID> getMembers() {
         return members;
     }
 
@@ -98,8 +124,25 @@ public class Team {
      * @param playerUUID The player UUID
      */
     public void addMember(UUID playerUUID) {
-        if (!members.contains(playerUUID)) {
-            members.add(playerUUID);
+        addMembers(List.of(playerUUID));
+    }
+
+    /**
+     * Add several members to the team, copying the member set only once
+     * @param players The player UUIDs
+     */
+    synchronized void addMembers(Collection<UUID> players) {
+        Set<UUID> updated = null;
+        for (UUID playerUUID : players) {
+            if (updated == null && !members.contains(playerUUID)) {
+                updated = new LinkedHashSet<>(members);
+            }
+            if (updated != null) {
+                updated.add(playerUUID);
+            }
+        }
+        if (updated != null) {
+            members = Collections.unmodifiableSet(updated);
         }
     }
 
@@ -109,7 +152,44 @@ public class Team {
      * @return True if the player was removed, false otherwise
      */
     public boolean removeMember(UUID playerUUID) {
-        return members.remove(playerUUID);
+        return removeMembers(List.of(playerUUID));
+    }
+
+    /**
+     * Remove several members from the team, copying the member set only once
+     * @param players The player UUIDs
+     * @return True if any player was removed, false otherwise
+     */
+    synchronized boolean removeMembers(Collection<UUID> players) {
+        Set<UUID> updated = null;
+        for (UUID playerUUID : players) {
+            if (updated == null && members.contains(playerUUID)) {
+                updated = new LinkedHashSet<>(members);
+            }
+            if (updated != null) {
+                updated.remove(playerUUID);
+            }
+        }
+        if (updated == null) {
+            return false;
+        }
+        members = Collections.unmodifiableSet(updated);
+        return true;
+    }
+
+    /**
+     * Replace all members of the team, e.g. with the members collected while loading
+     * @param players The player UUIDs, in the order they joined
+     */
+    synchronized void setMembers(Collection<UUID> players) {
+        members = Collections.unmodifiableSet(new LinkedHashSet<>(players));
+    }
+
+    /**
+     * Remove all members from the team
+     */
+    public synchronized void clearMembers() {
+        members = Set.of();
     }
 
     /**
@@ -120,4 +200,7 @@ public class Team {
     public boolean isMember(UUID playerUUID) {
         return members.contains(playerUUID);
     }
-}
\ No newline at end of file
+
+    private record CachedColor(String color, ColorPalette.Resolved resolved) {
+    }
+}
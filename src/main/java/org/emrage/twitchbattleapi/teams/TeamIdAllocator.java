@@ -0,0 +1,56 @@
+package org.emrage.twitchbattleapi.teams;
+
+import org.emrage.twitchbattleapi.storage.StorageBackend;
+
+/**
+ * Allocates team IDs that are unique across all servers sharing the storage.
+ * IDs come from a counter that is incremented atomically. Each server
+ * reserves a block of IDs at once, so most allocations need no round trip.
+ */
+public class TeamIdAllocator {
+    private final StorageBackend storage;
+    private final int blockSize;
+    private long next;
+    private long last = -1;
+
+    /**
+     * Create a new team ID allocator
+     * @param storage The storage holding the counter
+     * @param blockSize Number of IDs reserved per round trip
+     */
+    public TeamIdAllocator(StorageBackend storage, int blockSize) {
+        this.storage = storage;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Make sure the counter is not below an ID that is already in use,
+     * e.g. for teams created before the counter existed
+     * @param usedId The highest ID in use
+     * @return True if successful, false otherwise
+     */
+    public boolean ensureAbove(int usedId) {
+        return storage.reserveTeamIdsUpTo(usedId);
+    }
+
+    /**
+     * Get the next free team ID
+     * @return The team ID, or -1 if no ID could be reserved
+     */
+    public synchronized int next() {
+        if (next > last) {
+            long reserved = storage.reserveTeamIds(blockSize);
+            if (reserved < 0) {
+                return -1;
+            }
+
+            last = reserved;
+            next = last - blockSize + 1;
+        }
+
+        if (next > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (int) next++;
+    }
+}
@@ -4,69 +4,188 @@ import org.bson.Document;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.emrage.twitchbattleapi.TwitchBattleAPI;
+import org.emrage.twitchbattleapi.storage.StorageBackend;
+import org.emrage.twitchbattleapi.utils.UuidLongMap;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
- * Manages team operations
+ * Manages team operations.
+ * Lookups can be made from any thread without locking: teams are published as
+ * immutable snapshots and player teams are read optimistically. Changes are
+ * serialized by a single write lock.
  */
 public class TeamManager {
+    private static final int NO_TEAM = StorageBackend.NO_TEAM;
     private final TwitchBattleAPI api;
-    private final Map<Integer, Team> teams;
-    private final Map<UUID, Integer> playerTeams;
+    // Immutable, replaced as a whole on every change so readers never lock
+    private volatile Snapshot snapshot = new Snapshot(Map.of());
+    // _id of each team document, to resolve deletes from other servers
+    private final Map<Object, Integer> teamDocumentIds = new ConcurrentHashMap<>();
+    private final UuidLongMap playerTeams;
+    private final Object writeLock = new Object();
     private final Logger logger = Logger.getLogger("TwitchBattleAPI");
-    private int nextTeamId = 1;
+    private final TeamIdAllocator idAllocator;
 
     /**
-     * Create a new team manager
+     * Create a new team manager. Teams are loaded separately by {@link #loadTeams()}.
      * @param api The API instance
      */
     public TeamManager(TwitchBattleAPI api) {
         this.api = api;
-        this.teams = new HashMap<>();
-        this.playerTeams = new HashMap<>();
-        loadTeams();
+        this.playerTeams = new UuidLongMap(1024);
+        this.idAllocator = new TeamIdAllocator(api.getStorage(),
+                api.getPlugin().getConfig().getInt("teams.idBlockSize", 10));
     }
 
     /**
-     * Load teams from the database
+     * Load teams and their members from the storage.
+     * Called by the API during startup, see {@link TwitchBattleAPI#getReadyFuture()}.
      */
-    private void loadTeams() {
-        // Load teams
-        List<Document> teamDocs = api.getDatabaseManager().find("teams", new Document());
-        for (Document doc : teamDocs) {
-            int id = doc.getInteger("id", 0);
-            String name = doc.getString("name");
-            String displayName = doc.getString("display_name");
-            String color = doc.getString("color");
+    public void loadTeams() {
+        loadTeams(null, 0L);
+    }
 
-            Team team = new Team(id, name, displayName, color);
-            teams.put(id, team);
+    /**
+     * Load teams from the storage and their members from a snapshot of an earlier run,
+     * reading only the players changed since. Teams are always read completely: there
+     * are few of them and teams deleted meanwhile must not come back.
+     * Falls back to loading all members if the changes can't be read.
+     * Called by the API during startup, see {@link TwitchBattleAPI#getReadyFuture()}.
+     * @param saved The snapshot section written by {@link #writeSnapshot(ByteBuffer)}, or null to load all members
+     * @param since Time from which changes are not contained in the snapshot
+     */
+    public void loadTeams(ByteBuffer saved, long since) {
+        Map<Integer, Team> loaded = new HashMap<>();
+        int[] highestId = {0};
+
+        // Load teams
+        boolean success = api.getStorage().loadTeams((team, recordId) -> {
+            loaded.put(team.getId(), team);
+            teamDocumentIds.put(recordId, team.getId());
 
             // Keep track of the highest team ID
-            if (id >= nextTeamId) {
-                nextTeamId = id + 1;
+            highestId[0] = Math.max(highestId[0], team.getId());
+        });
+        if (!success) {
+            throw new IllegalStateException("Failed to load teams");
+        }
+
+        // Handed to each team once, adding players one by one would copy the member set per player
+        Map<Integer, List<UUID>> loadedMembers = new HashMap<>();
+        UuidLongMap members = saved != null ? readSnapshot(saved, since) : null;
+        if (members != null) {
+            members.forEach((msb, lsb, teamId) -> {
+                UUID playerUUID = new UUID(msb, lsb);
+                api.getKnownPlayers().add(playerUUID);
+
+                if (loaded.containsKey((int) teamId)) {
+                    loadedMembers.computeIfAbsent((int) teamId, id -> new ArrayList<>()).add(playerUUID);
+                    playerTeams.put(playerUUID, teamId);
+                }
+            });
+        } else {
+            // Stream team members, there can be far more players than teams
+            success = api.getStorage().loadPlayers(true, (playerUUID, username, teamId) -> {
+                api.getKnownPlayers().add(playerUUID);
+
+                if (loaded.containsKey(teamId)) {
+                    loadedMembers.computeIfAbsent(teamId, id -> new ArrayList<>()).add(playerUUID);
+                    playerTeams.put(playerUUID, teamId);
+                }
+            });
+            if (!success) {
+                throw new IllegalStateException("Failed to load team members");
             }
         }
+        loadedMembers.forEach((teamId, teamMembers) -> loaded.get(teamId).setMembers(teamMembers));
 
-        // Load team members
-        Document teamFilter = new Document("team_id", new Document("$ne", null));
-        List<Document> playerDocs = api.getDatabaseManager().find("players", teamFilter);
-        for (Document doc : playerDocs) {
-            UUID playerUUID = UUID.fromString(doc.getString("uuid"));
-            int teamId = doc.getInteger("team_id");
+        // Publish the teams once they are complete
+        synchronized (writeLock) {
+            Map<Integer, Team> merged = new HashMap<>(snapshot.byId);
+            merged.putAll(loaded);
+            snapshot = new Snapshot(merged);
+        }
 
-            if (teams.containsKey(teamId)) {
-                teams.get(teamId).addMember(playerUUID);
-                playerTeams.put(playerUUID, teamId);
+        // Teams created before the ID counter existed must not be handed out again
+        if (!idAllocator.ensureAbove(highestId[0])) {
+            throw new IllegalStateException("Failed to initialize the team ID counter");
+        }
+    }
+
+    /**
+     * Read the team members of a snapshot and apply the membership changes made since
+     * @param buffer The snapshot section
+     * @param since Time from which changes are not contained in the snapshot
+     * @return Player UUID to team ID, or null if the snapshot is broken or the changes can't be read
+     */
+    private UuidLongMap readSnapshot(ByteBuffer buffer, long since) {
+        UuidLongMap members;
+        try {
+            int count = buffer.getInt();
+            members = new UuidLongMap(count);
+            for (int i = 0; i < count; i++) {
+                members.put(buffer.getLong(), buffer.getLong(), buffer.getInt());
             }
+        } catch (BufferUnderflowException e) {
+            logger.warning("Ignoring broken team snapshot");
+            return null;
         }
+
+        boolean success = api.getStorage().loadPlayersSince(since, (playerUUID, username, teamId) -> {
+            api.getKnownPlayers().add(playerUUID);
+            if (teamId != NO_TEAM) {
+                members.put(playerUUID, teamId);
+            } else {
+                members.remove(playerUUID);
+            }
+        });
+        if (!success) {
+            logger.info("Team members can't be caught up from the snapshot, loading all members");
+            return null;
+        }
+        return members;
+    }
+
+    /**
+     * Get the maximum size of the snapshot written by {@link #writeSnapshot(ByteBuffer)}
+     * @return The size in bytes
+     */
+    public long estimateSnapshotSize() {
+        // Leave room for players that join a team while the snapshot is written
+        return 4L + (playerTeams.size() + 1024L) * 20;
+    }
+
+    /**
+     * Write the team of every player to a snapshot, which is loaded by
+     * {@link #loadTeams(ByteBuffer, long)} on the next start
+     * @param buffer The buffer to write to
+     * @return True if written
+     */
+    public boolean writeSnapshot(ByteBuffer buffer) {
+        int countAt = buffer.position();
+        int[] count = {0};
+        buffer.putInt(0);
+        playerTeams.forEach((msb, lsb, teamId) -> {
+            buffer.putLong(msb).putLong(lsb).putInt((int) teamId);
+            count[0]++;
+        });
+        buffer.putInt(countAt, count[0]);
+        return true;
     }
 
     /**
@@ -77,31 +196,36 @@ public class TeamManager {
      * @return The created team, or null if creation failed
      */
     public Team createTeam(String name, String displayName, String color) {
-        // Check if a team with this name already exists
-        for (Team team : teams.values()) {
-            if (team.getName().equalsIgnoreCase(name)) {
+        // Names and the ID counter are only known once the teams are loaded
+        if (!api.awaitReady()) {
+            return null;
+        }
+
+        synchronized (writeLock) {
+            // Check if a team with this name already exists
+            if (snapshot.byName.containsKey(normalize(name))) {
                 return null;
             }
-        }
 
-        // Create new team document
-        Document teamDoc = new Document()
-                .append("id", nextTeamId)
-                .append("name", name)
-                .append("display_name", displayName)
-                .append("color", color)
-                .append("created_at", new java.util.Date());
+            int id = idAllocator.next();
+            if (id < 0) {
+                logger.severe("Could not allocate a team ID");
+                return null;
+            }
 
-        boolean success = api.getDatabaseManager().insertOne("teams", teamDoc);
+            Team team = new Team(id, name, displayName, color);
+            Object recordId = api.getStorage().insertTeam(team);
 
-        if (success) {
-            Team team = new Team(nextTeamId, name, displayName, color);
-            teams.put(nextTeamId, team);
-            nextTeamId++;
-            return team;
-        }
+            if (recordId != null) {
+                teamDocumentIds.put(recordId, id);
+                Map<Integer, Team> updated = new HashMap<>(snapshot.byId);
+                updated.put(id, team);
+                snapshot = new Snapshot(updated);
+                return team;
+            }
 
-        return null;
+            return null;
+        }
     }
 
     /**
@@ -110,7 +234,7 @@ public class TeamManager {
      * @return The team, or null if not found
      */
     public Team getTeam(int id) {
-        return teams.get(id);
+        return snapshot.byId.get(id);
     }
 
     /**
@@ -119,12 +243,16 @@ public class TeamManager {
      * @return The team, or null if not found
      */
     public Team getTeamByName(String name) {
-        for (Team team : teams.values()) {
-            if (team.getName().equalsIgnoreCase(name)) {
-                return team;
-            }
-        }
-        return null;
+        return name != null ? snapshot.byName.get(normalize(name)) : null;
+    }
+
+    /**
+     * Normalize a team name for case-insensitive lookups
+     * @param name The team name
+     * @return The normalized name
+     */
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -132,7 +260,7 @@ public class TeamManager {
      * @return List of all teams
      */
     public List<Team> getAllTeams() {
-        return new ArrayList<>(teams.values());
+        return new ArrayList<>(snapshot.byId.values());
     }
 
     /**
@@ -141,28 +269,31 @@ public class TeamManager {
      * @return True if the team was deleted, false otherwise
      */
     public boolean deleteTeam(int id) {
-        if (!teams.containsKey(id)) {
+        // Loading replaces the teams in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
             return false;
         }
 
-        boolean success = api.getDatabaseManager().deleteOne("teams", new Document("id", id));
-
-        if (success) {
-            // Remove players from the team
-            for (UUID playerUUID : new ArrayList<>(teams.get(id).getMembers())) {
-                playerTeams.remove(playerUUID);
+        synchronized (writeLock) {
+            if (!snapshot.byId.containsKey(id)) {
+                return false;
+            }
 
-                // Update player document to remove team association
-                Document playerFilter = new Document("uuid", playerUUID.toString());
-                Document update = new Document("team_id", null);
-                api.getDatabaseManager().updateOne("players", playerFilter, update);
+            boolean success = api.getStorage().deleteTeam(id);
+
+            if (success) {
+                Map<Integer, Team> updated = new HashMap<>(snapshot.byId);
+                Team team = updated.remove(id);
+                snapshot = new Snapshot(updated);
+                teamDocumentIds.values().remove(id);
+                for (UUID playerUUID : team.getMembers()) {
+                    playerTeams.remove(playerUUID);
+                }
+                return true;
             }
 
-            teams.remove(id);
-            return true;
+            return false;
         }
-
-        return false;
     }
 
     /**
@@ -171,13 +302,35 @@ public class TeamManager {
      * @return True if the team was updated, false otherwise
      */
     public boolean updateTeam(Team team) {
-        Document filter = new Document("id", team.getId());
-        Document update = new Document()
-                .append("name", team.getName())
-                .append("display_name", team.getDisplayName())
-                .append("color", team.getColor());
+        // Loading replaces the teams in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
+            return false;
+        }
+
+        synchronized (writeLock) {
+            // Names must stay unique
+            Team sameName = snapshot.byName.get(normalize(team.getName()));
+            if (sameName != null && sameName.getId() != team.getId()) {
+                return false;
+            }
+
+            boolean success = api.getStorage().updateTeam(team);
 
-        return api.getDatabaseManager().updateOne("teams", filter, update);
+            Team cached = snapshot.byId.get(team.getId());
+            if (success && cached != null) {
+                // Apply changes made on a different instance to the cached team
+                if (cached != team) {
+                    cached.setName(team.getName());
+                    cached.setDisplayName(team.getDisplayName());
+                    cached.setColor(team.getColor());
+                }
+
+                // Rebuild the name index, the old name is unknown if the cached instance was renamed directly
+                snapshot = new Snapshot(snapshot.byId);
+            }
+
+            return success;
+        }
     }
 
     /**
@@ -187,47 +340,171 @@ public class TeamManager {
      * @return True if the player was added, false otherwise
      */
     public boolean addPlayerToTeam(UUID playerUUID, int teamId) {
-        if (!teams.containsKey(teamId)) {
+        return assignPlayers(Map.of(playerUUID, teamId));
+    }
+
+    /**
+     * Assign players to teams in a single bulk write.
+     * Players are moved out of their current team. Players whose write fails keep their current team.
+     * @param assignments The team ID for each player UUID
+     * @return True if all players were assigned, false if a team does not exist or a write failed
+     */
+    public boolean assignPlayers(Map<UUID, Integer> assignments) {
+        if (assignments.isEmpty()) {
+            return true;
+        }
+        // Loading replaces the teams in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
             return false;
         }
 
-        // Remove from current team if any
-        if (playerTeams.containsKey(playerUUID)) {
-            removePlayerFromTeam(playerUUID);
+
+        // Offline players keep their stored name
+        Map<UUID, String> usernames = new HashMap<>();
+        for (UUID playerUUID : assignments.keySet()) {
+            Player player = Bukkit.getPlayer(playerUUID);
+            if (player != null) {
+                usernames.put(playerUUID, player.getName());
+            }
         }
 
-        // Get player username
-        Player player = Bukkit.getPlayer(playerUUID);
-        String username = player != null ? player.getName() : playerUUID.toString();
+        synchronized (writeLock) {
+            for (int teamId : assignments.values()) {
+                if (!snapshot.byId.containsKey(teamId)) {
+                    return false;
+                }
+            }
 
-        // Check if player exists in database
-        Document playerFilter = new Document("uuid", playerUUID.toString());
-        Document playerDoc = api.getDatabaseManager().findOne("players", playerFilter);
+            Set<UUID> failed = new HashSet<>(api.getStorage().setPlayerTeams(assignments, usernames));
+            Map<UUID, Integer> moves = new HashMap<>(assignments);
+            moves.keySet().removeAll(failed);
+            for (UUID playerUUID : moves.keySet()) {
+                api.getKnownPlayers().add(playerUUID);
+            }
+            moveMembers(moves);
+            return failed.isEmpty();
+        }
+    }
 
-        boolean success;
-        if (playerDoc == null) {
-            // Insert new player document
-            Document newPlayerDoc = new Document()
-                    .append("uuid", playerUUID.toString())
-                    .append("username", username)
-                    .append("team_id", teamId);
-            success = api.getDatabaseManager().insertOne("players", newPlayerDoc);
-        } else {
-            // Update existing player document
-            Document update = new Document("team_id", teamId);
-            if (!playerDoc.getString("username").equals(username)) {
-                update.append("username", username);
+    /**
+     * Distribute players randomly and evenly across teams and assign them in a single bulk write
+     * @param players The players to distribute
+     * @param teamIds The teams to distribute the players into
+     * @return The assigned team ID for each player UUID, or null if a team does not exist or a write failed
+     */
+    public Map<UUID, Integer> shuffleIntoTeams(Collection<UUID> players, Collection<Integer> teamIds) {
+        if (teamIds.isEmpty()) {
+            return null;
+        }
+
+        List<UUID> shuffled = new ArrayList<>(players);
+        Collections.shuffle(shuffled);
+        List<Integer> targets = new ArrayList<>(teamIds);
+
+        // Round robin, so team sizes differ by at most one
+        Map<UUID, Integer> assignments = new HashMap<>();
+        for (int i = 0; i < shuffled.size(); i++) {
+            assignments.put(shuffled.get(i), targets.get(i % targets.size()));
+        }
+
+        return assignPlayers(assignments) ? assignments : null;
+    }
+
+    /**
+     * Remove all players from a team in a single update
+     * @param teamId The team ID
+     * @return True if the team was cleared, false otherwise
+     */
+    public boolean clearTeam(int teamId) {
+        // Loading replaces the teams in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
+            return false;
+        }
+
+        synchronized (writeLock) {
+            Team team = snapshot.byId.get(teamId);
+            if (team == null) {
+                return false;
             }
-            success = api.getDatabaseManager().updateOne("players", playerFilter, update);
+
+            boolean success = api.getStorage().clearTeam(teamId);
+
+            if (success) {
+                for (UUID playerUUID : team.getMembers()) {
+                    playerTeams.remove(playerUUID);
+                }
+                team.clearMembers();
+                return true;
+            }
+
+            return false;
         }
+    }
 
-        if (success) {
-            teams.get(teamId).addMember(playerUUID);
-            playerTeams.put(playerUUID, teamId);
-            return true;
+    /**
+     * Remove players from their teams in a single update
+     * @param players The player UUIDs
+     * @return True if the players were removed, false otherwise
+     */
+    public boolean removePlayers(Collection<UUID> players) {
+        // Loading replaces the teams in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
+            return false;
         }
 
-        return false;
+        synchronized (writeLock) {
+            boolean success = api.getStorage().removePlayersFromTeams(players);
+
+            if (success) {
+                Map<UUID, Integer> moves = new HashMap<>();
+                for (UUID playerUUID : players) {
+                    moves.put(playerUUID, NO_TEAM);
+                }
+                moveMembers(moves);
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Move a player to another team in memory. Must hold the membership lock.
+     * @param playerUUID The player UUID
+     * @param teamId The new team ID, or {@link #NO_TEAM}
+     */
+    private void moveMember(UUID playerUUID, int teamId) {
+        moveMembers(Map.of(playerUUID, teamId));
+    }
+
+    /**
+     * Move players to other teams in memory, changing the member set of each team once.
+     * Must hold the membership lock.
+     * @param moves The new team ID for each player UUID, or {@link #NO_TEAM}
+     */
+    private void moveMembers(Map<UUID, Integer> moves) {
+        Map<Team, List<UUID>> removed = new HashMap<>();
+        Map<Team, List<UUID>> added = new HashMap<>();
+        moves.forEach((playerUUID, teamId) -> {
+            int oldTeamId = (int) playerTeams.get(playerUUID, NO_TEAM);
+            if (oldTeamId != NO_TEAM && oldTeamId != teamId) {
+                Team oldTeam = snapshot.byId.get(oldTeamId);
+                if (oldTeam != null) {
+                    removed.computeIfAbsent(oldTeam, key -> new ArrayList<>()).add(playerUUID);
+                }
+            }
+
+            Team team = snapshot.byId.get(teamId);
+            if (team != null) {
+                added.computeIfAbsent(team, key -> new ArrayList<>()).add(playerUUID);
+                playerTeams.put(playerUUID, teamId);
+            } else {
+                playerTeams.remove(playerUUID);
+            }
+        });
+
+        removed.forEach(Team::removeMembers);
+        added.forEach(Team::addMembers);
     }
 
     /**
@@ -236,22 +513,192 @@ public class TeamManager {
      * @return True if the player was removed, false otherwise
      */
     public boolean removePlayerFromTeam(UUID playerUUID) {
+        // Loading replaces the teams in memory, changes made meanwhile would be lost there
+        if (!api.awaitReady()) {
+            return false;
+        }
+
         if (!playerTeams.containsKey(playerUUID)) {
             return false;
         }
 
-        int teamId = playerTeams.get(playerUUID);
-        Document filter = new Document("uuid", playerUUID.toString());
-        Document update = new Document("team_id", null);
-        boolean success = api.getDatabaseManager().updateOne("players", filter, update);
+        synchronized (writeLock) {
+            boolean success = api.getStorage().removePlayersFromTeams(List.of(playerUUID));
 
-        if (success) {
-            teams.get(teamId).removeMember(playerUUID);
-            playerTeams.remove(playerUUID);
-            return true;
+            if (success) {
+                moveMember(playerUUID, NO_TEAM);
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Apply a team document that was written by another server
+     * @param doc The team document
+     */
+    public void applyRemoteTeam(Document doc) {
+        Integer id = doc.getInteger("id");
+        if (id == null) {
+            return;
         }
 
-        return false;
+        synchronized (writeLock) {
+            teamDocumentIds.put(doc.get("_id"), id);
+
+            Team team = snapshot.byId.get(id);
+            if (team == null) {
+                Map<Integer, Team> updated = new HashMap<>(snapshot.byId);
+                updated.put(id, new Team(id, doc.getString("name"), doc.getString("display_name"), doc.getString("color")));
+                snapshot = new Snapshot(updated);
+                return;
+            }
+
+            team.setName(doc.getString("name"));
+            team.setDisplayName(doc.getString("display_name"));
+            team.setColor(doc.getString("color"));
+            snapshot = new Snapshot(snapshot.byId);
+        }
+    }
+
+    /**
+     * Apply the deletion of a team document by another server
+     * @param documentId The _id of the team document
+     */
+    public void removeRemoteTeam(Object documentId) {
+        synchronized (writeLock) {
+            Integer id = teamDocumentIds.remove(documentId);
+            Team team = id != null ? snapshot.byId.get(id) : null;
+            if (team == null) {
+                return;
+            }
+
+            Map<Integer, Team> updated = new HashMap<>(snapshot.byId);
+            updated.remove(id);
+            snapshot = new Snapshot(updated);
+            for (UUID playerUUID : team.getMembers()) {
+                playerTeams.remove(playerUUID);
+            }
+        }
+    }
+
+    /**
+     * Remove all teams whose documents no longer exist
+     * @param documentIds The _id of every team document
+     */
+    public void reconcileRemoteTeams(Set<Object> documentIds) {
+        for (Object documentId : new ArrayList<>(teamDocumentIds.keySet())) {
+            if (!documentIds.contains(documentId)) {
+                removeRemoteTeam(documentId);
+            }
+        }
+    }
+
+    /**
+     * Apply a player document that was written by another server
+     * @param doc The player document
+     */
+    public void applyRemoteMembership(Document doc) {
+        String uuid = doc.getString("uuid");
+        if (uuid == null) {
+            return;
+        }
+
+        UUID playerUUID = UUID.fromString(uuid);
+        Integer teamId = doc.getInteger("team_id");
+        synchronized (writeLock) {
+            int current = (int) playerTeams.get(playerUUID, NO_TEAM);
+            int target = teamId != null ? teamId : NO_TEAM;
+            if (current != target) {
+                moveMember(playerUUID, target);
+            }
+        }
+    }
+
+    /**
+     * Create a new team asynchronously
+     * @param name The team name
+     * @param displayName The team display name
+     * @param color The team color in hex format
+     * @return Future with the created team, or null if creation failed
+     */
+    public CompletableFuture<Team> createTeamAsync(String name, String displayName, String color) {
+        return api.supplyAsync(() -> createTeam(name, displayName, color));
+    }
+
+    /**
+     * Delete a team asynchronously
+     * @param id The team ID
+     * @return Future with true if the team was deleted, false otherwise
+     */
+    public CompletableFuture<Boolean> deleteTeamAsync(int id) {
+        return api.supplyAsync(() -> deleteTeam(id));
+    }
+
+    /**
+     * Update a team asynchronously
+     * @param team The team to update
+     * @return Future with true if the team was updated, false otherwise
+     */
+    public CompletableFuture<Boolean> updateTeamAsync(Team team) {
+        return api.supplyAsync(() -> updateTeam(team));
+    }
+
+    /**
+     * Add a player to a team asynchronously
+     * @param playerUUID The player UUID
+     * @param teamId The team ID
+     * @return Future with true if the player was added, false otherwise
+     */
+    public CompletableFuture<Boolean> addPlayerToTeamAsync(UUID playerUUID, int teamId) {
+        return api.supplyAsync(() -> addPlayerToTeam(playerUUID, teamId));
+    }
+
+    /**
+     * Assign players to teams asynchronously
+     * @param assignments The team ID for each player UUID
+     * @return Future with true if all players were assigned, false otherwise
+     */
+    public CompletableFuture<Boolean> assignPlayersAsync(Map<UUID, Integer> assignments) {
+        return api.supplyAsync(() -> assignPlayers(assignments));
+    }
+
+    /**
+     * Distribute players randomly and evenly across teams asynchronously
+     * @param players The players to distribute
+     * @param teamIds The teams to distribute the players into
+     * @return Future with the assigned team ID for each player UUID, or null if the assignment failed
+     */
+    public CompletableFuture<Map<UUID, Integer>> shuffleIntoTeamsAsync(Collection<UUID> players, Collection<Integer> teamIds) {
+        return api.supplyAsync(() -> shuffleIntoTeams(players, teamIds));
+    }
+
+    /**
+     * Remove all players from a team asynchronously
+     * @param teamId The team ID
+     * @return Future with true if the team was cleared, false otherwise
+     */
+    public CompletableFuture<Boolean> clearTeamAsync(int teamId) {
+        return api.supplyAsync(() -> clearTeam(teamId));
+    }
+
+    /**
+     * Remove players from their teams asynchronously
+     * @param players The player UUIDs
+     * @return Future with true if the players were removed, false otherwise
+     */
+    public CompletableFuture<Boolean> removePlayersAsync(Collection<UUID> players) {
+        return api.supplyAsync(() -> removePlayers(players));
+    }
+
+    /**
+     * Remove a player from their team asynchronously
+     * @param playerUUID The player UUID
+     * @return Future with true if the player was removed, false otherwise
+     */
+    public CompletableFuture<Boolean> removePlayerFromTeamAsync(UUID playerUUID) {
+        return api.supplyAsync(() -> removePlayerFromTeam(playerUUID));
     }
 
     /**
@@ -260,10 +707,30 @@ public class TeamManager {
      * @return The team, or null if the player is not in a team
      */
     public Team getPlayerTeam(UUID playerUUID) {
-        if (!playerTeams.containsKey(playerUUID)) {
+        int teamId = (int) playerTeams.get(playerUUID, NO_TEAM);
+        if (teamId == NO_TEAM) {
             return null;
         }
 
-        return teams.get(playerTeams.get(playerUUID));
+        return snapshot.byId.get(teamId);
+    }
+
+    /**
+     * Immutable view of all teams, indexed by ID and normalized name
+     */
+    private static final class Snapshot {
+        final Map<Integer, Team> byId;
+        final Map<String, Team> byName;
+
+        Snapshot(Map<Integer, Team> teams) {
+            this.byId = Map.copyOf(teams);
+            Map<String, Team> names = new HashMap<>();
+            for (Team team : teams.values()) {
+                if (team.getName() != null) {
+                    names.put(normalize(team.getName()), team);
+                }
+            }
+            this.byName = Map.copyOf(names);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Resolves hex colors to chat colors
+ */
+public final class ColorPalette {
+    private static final ChatColor[] COLORS = {
+            ChatColor.BLACK, ChatColor.DARK_BLUE, ChatColor.DARK_GREEN, ChatColor.DARK_AQUA,
+            ChatColor.DARK_RED, ChatColor.DARK_PURPLE, ChatColor.GOLD, ChatColor.GRAY,
+            ChatColor.DARK_GRAY, ChatColor.BLUE, ChatColor.GREEN, ChatColor.AQUA,
+            ChatColor.RED, ChatColor.LIGHT_PURPLE, ChatColor.YELLOW, ChatColor.WHITE
+    };
+    private static final int[] RED = {0, 0, 0, 0, 170, 170, 255, 170, 85, 85, 85, 85, 255, 255, 255, 255};
+    private static final int[] GREEN = {0, 0, 170, 170, 0, 0, 170, 170, 85, 85, 255, 255, 85, 85, 255, 255};
+    private static final int[] BLUE = {0, 170, 0, 170, 0, 170, 0, 170, 85, 255, 85, 255, 85, 255, 85, 255};
+
+    private ColorPalette() {
+    }
+
+    /**
+     * Parse a hex color
+     * @param hexColor The color in hex format, with or without leading #
+     * @return The color as 0xRRGGBB, or -1 if it is not a valid color
+     */
+    public static int parseHex(String hexColor) {
+        if (hexColor == null) {
+            return -1;
+        }
+
+        int start = hexColor.startsWith("#") ? 1 : 0;
+        if (hexColor.length() < start + 6) {
+            return -1;
+        }
+
+        int rgb = 0;
+        for (int i = start; i < start + 6; i++) {
+            int digit = Character.digit(hexColor.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            rgb = (rgb << 4) | digit;
+        }
+        return rgb;
+    }
+
+    /**
+     * Get the nearest ChatColor to an RGB color
+     * @param r Red component (0-255)
+     * @param g Green component (0-255)
+     * @param b Blue component (0-255)
+     * @return The nearest ChatColor
+     */
+    public static ChatColor nearest(int r, int g, int b) {
+        ChatColor nearestColor = ChatColor.WHITE;
+        int minDistance = Integer.MAX_VALUE;
+
+        // Squared distance is enough to compare
+        for (int i = 0; i < COLORS.length; i++) {
+            int dr = RED[i] - r;
+            int dg = GREEN[i] - g;
+            int db = BLUE[i] - b;
+            int distance = dr * dr + dg * dg + db * db;
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearestColor = COLORS[i];
+            }
+        }
+        return nearestColor;
+    }
+
+    /**
+     * Resolve a hex color
+     * @param hexColor The color in hex format
+     * @return The resolved color, or null if the color is not valid
+     */
+    public static Resolved resolve(String hexColor) {
+        int rgb = parseHex(hexColor);
+        if (rgb < 0) {
+            return null;
+        }
+        return new Resolved(rgb);
+    }
+
+    /**
+     * A hex color resolved to its chat color codes
+     */
+    public static final class Resolved {
+        private final int rgb;
+        private final ChatColor chatColor;
+        private final String legacyCode;
+        private final String hexCode;
+
+        private Resolved(int rgb) {
+            this.rgb = rgb;
+            this.chatColor = nearest((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            this.legacyCode = chatColor.toString();
+
+            // §x§R§R§G§G§B§B, understood by 1.16+ clients
+            String hex = String.format("%06x", rgb);
+            StringBuilder builder = new StringBuilder(14);
+            builder.append(ChatColor.COLOR_CHAR).append('x');
+            for (int i = 0; i < hex.length(); i++) {
+                builder.append(ChatColor.COLOR_CHAR).append(hex.charAt(i));
+            }
+            this.hexCode = builder.toString();
+        }
+
+        /**
+         * Get the color as 0xRRGGBB
+         * @return The RGB value
+         */
+        public int getRgb() {
+            return rgb;
+        }
+
+        /**
+         * Get the nearest of the 16 chat colors
+         * @return The chat color
+         */
+        public ChatColor getChatColor() {
+            return chatColor;
+        }
+
+        /**
+         * Get the color code to put in front of text
+         * @param hex Whether to use the exact RGB color instead of the nearest chat color
+         * @return The color code
+         */
+        public String getPrefix(boolean hex) {
+            return hex ? hexCode : legacyCode;
+        }
+    }
+}
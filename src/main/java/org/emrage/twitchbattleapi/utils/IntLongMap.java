@@ -0,0 +1,182 @@
+package org.emrage.twitchbattleapi.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Thread-safe map from int to long without boxing.
+ * Each int key is stored as a UUID-shaped entry of a {@link UuidLongMap}, with
+ * 0 as most significant and the key as least significant bits, so both maps
+ * share the same probing, removal and locking. A key thus takes two longs
+ * instead of one int, which is fine for the few teams this map is used for.
+ */
+public class IntLongMap {
+    // Returned by lookups of the map view; only a key that really maps to this value needs a second lookup
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final UuidLongMap map;
+
+    /**
+     * Create a new map
+     */
+    public IntLongMap() {
+        this(64);
+    }
+
+    /**
+     * Create a new map
+     * @param expectedSize The expected number of entries
+     */
+    public IntLongMap(int expectedSize) {
+        this.map = new UuidLongMap(expectedSize);
+    }
+
+    /**
+     * Get the value of a key
+     * @param key The key
+     * @param defaultValue The value to return if the key is not present
+     * @return The value, or the default value
+     */
+    public long get(int key, long defaultValue) {
+        return map.get(0L, key, defaultValue);
+    }
+
+    /**
+     * Check whether a key is present
+     * @param key The key
+     * @return True if the key is present
+     */
+    public boolean containsKey(int key) {
+        return map.containsKey(0L, key);
+    }
+
+    /**
+     * Set the value of a key
+     * @param key The key
+     * @param value The value
+     */
+    public void put(int key, long value) {
+        map.put(0L, key, value);
+    }
+
+    /**
+     * Add to the value of a key, starting at 0 if the key is not present
+     * @param key The key
+     * @param delta The value to add
+     * @return The new value
+     */
+    public long addTo(int key, long delta) {
+        return map.addTo(0L, key, delta);
+    }
+
+    /**
+     * Remove a key
+     * @param key The key
+     * @return True if the key was present
+     */
+    public boolean remove(int key) {
+        return map.remove(0L, key);
+    }
+
+    /**
+     * Get the number of entries
+     * @return The number of entries
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * Iterate over a consistent snapshot of all entries.
+     * Writers are blocked during the iteration, so the action must not modify this map.
+     * @param action The action to run for every entry
+     */
+    public void forEach(EntryConsumer action) {
+        map.forEach((msb, lsb, value) -> action.accept((int) lsb, value));
+    }
+
+    /**
+     * Get a read-only map view. Lookups go directly to this map; iteration copies
+     * one stripe at a time and does not reflect changes to stripes it has already passed.
+     * @return The map view
+     */
+    public Map<Integer, Long> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * Receives the entries of a map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * Accept an entry
+         * @param key The key
+         * @param value The value
+         */
+        void accept(int key, long value);
+    }
+
+    private final class MapView extends AbstractMap<Integer, Long> {
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof Integer id)) {
+                return null;
+            }
+            long value = IntLongMap.this.get(id, MISSING);
+            if (value == MISSING && !IntLongMap.this.containsKey(id)) {
+                return null;
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer id && IntLongMap.this.containsKey(id);
+        }
+
+        @Override
+        public int size() {
+            return IntLongMap.this.size();
+        }
+
+        @Override
+        public Set<Entry<Integer, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Integer, Long>> iterator() {
+                    Iterator<Entry<UUID, Long>> entries = map.asMap().entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Integer, Long> next() {
+                            Entry<UUID, Long> entry = entries.next();
+                            int key = (int) entry.getKey().getLeastSignificantBits();
+                            return new AbstractMap.SimpleImmutableEntry<>(key, entry.getValue());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return IntLongMap.this.size();
+                }
+            };
+        }
+    }
+}
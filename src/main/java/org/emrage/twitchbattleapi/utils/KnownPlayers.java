@@ -0,0 +1,104 @@
+package org.emrage.twitchbattleapi.utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Set of players that are known to have a document in the players collection.
+ * Writes only need to create the player document for players that are not in
+ * the set. A player that is missing, e.g. because another server inserted it,
+ * is written with an upsert that leaves an existing document unchanged.
+ */
+public class KnownPlayers {
+    private final UuidLongMap players = new UuidLongMap(1024);
+
+    /**
+     * Check whether a player is known to exist in the database
+     * @param playerUUID The player UUID
+     * @return True if the player document exists
+     */
+    public boolean contains(UUID playerUUID) {
+        return players.containsKey(playerUUID);
+    }
+
+    /**
+     * Mark a player as existing in the database
+     * @param playerUUID The player UUID
+     */
+    public void add(UUID playerUUID) {
+        players.put(playerUUID, 1L);
+    }
+
+    /**
+     * Forget a player, e.g. after its document was deleted
+     * @param playerUUID The player UUID
+     */
+    public void remove(UUID playerUUID) {
+        players.remove(playerUUID);
+    }
+
+    /**
+     * Get the number of known players
+     * @return The number of players
+     */
+    public int size() {
+        return players.size();
+    }
+
+    /**
+     * Forget all players
+     */
+    public void clear() {
+        players.clear();
+    }
+
+    /**
+     * Add the players of a snapshot of an earlier run
+     * @param buffer The section written by {@link #writeSnapshot(ByteBuffer)}, may be null
+     * @return True if read, false if the snapshot is missing or broken
+     */
+    public boolean load(ByteBuffer buffer) {
+        if (buffer == null) {
+            return false;
+        }
+
+        try {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                players.put(buffer.getLong(), buffer.getLong(), 1L);
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            Logger.getLogger("TwitchBattleAPI").warning("Ignoring broken snapshot of known players");
+            return false;
+        }
+    }
+
+    /**
+     * Get the maximum size of the snapshot written by {@link #writeSnapshot(ByteBuffer)}
+     * @return The size in bytes
+     */
+    public long estimateSnapshotSize() {
+        // Leave room for players that are added while the snapshot is written
+        return 4L + (players.size() + 1024L) * 16;
+    }
+
+    /**
+     * Write all players to a snapshot, which is loaded by {@link #load(ByteBuffer)} on the next start
+     * @param buffer The buffer to write to
+     * @return True
+     */
+    public boolean writeSnapshot(ByteBuffer buffer) {
+        int countAt = buffer.position();
+        int[] count = {0};
+        buffer.putInt(0);
+        players.forEach((msb, lsb, value) -> {
+            buffer.putLong(msb).putLong(lsb);
+            count[0]++;
+        });
+        buffer.putInt(countAt, count[0]);
+        return true;
+    }
+}
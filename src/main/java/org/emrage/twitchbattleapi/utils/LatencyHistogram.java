@@ -0,0 +1,115 @@
+package org.emrage.twitchbattleapi.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies, in the style of HdrHistogram.
+ * Values below 32 are counted exactly; above, each power of two is split into
+ * 32 buckets, so percentiles are accurate to about 3%. Recording a value is a
+ * few atomic increments and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Record a value
+     * @param value The value, negative values are counted as 0
+     */
+    public void record(long value) {
+        long recorded = Math.max(0L, value);
+        counts.incrementAndGet(indexOf(recorded));
+        count.increment();
+        sum.add(recorded);
+        max.accumulate(recorded);
+    }
+
+    /**
+     * Get the number of recorded values
+     * @return The count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean of all recorded values
+     * @return The mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n > 0 ? (double) sum.sum() / n : 0.0;
+    }
+
+    /**
+     * Get the highest recorded value
+     * @return The maximum
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the value below which a percentage of the recorded values fall
+     * @param percentile The percentile, e.g. 99.9
+     * @return The highest value that is equivalent to the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0L;
+        }
+
+        long target = Math.max(1L, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Remove all recorded values. Values recorded at the same time may be partially kept.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // The highest bit selects the bucket, the next bits the sub-bucket
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,232 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.emrage.twitchbattleapi.TwitchBattleAPI;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Cache of player names for rendering.
+ * Names are loaded from the players collection and updated when players join.
+ * Lookups never block: a name that is not cached is loaded in the background
+ * and is available on a later lookup.
+ */
+public class PlayerNameCache implements Listener {
+    private final TwitchBattleAPI api;
+    private final int maxSize;
+    private final long expireMillis;
+    private final Map<UUID, Entry> names;
+    private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
+    private Runnable loadListener = () -> { };
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+
+    /**
+     * Create a new player name cache
+     * @param api The API instance
+     * @param maxSize Maximum number of cached names, least recently used names are evicted first
+     * @param expireMillis Time after which a cached name is loaded again
+     */
+    public PlayerNameCache(TwitchBattleAPI api, int maxSize, long expireMillis) {
+        this.api = api;
+        this.maxSize = maxSize;
+        this.expireMillis = expireMillis;
+        this.names = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                return size() > PlayerNameCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Load all player names from the storage.
+     * The players are also registered as known players, so they are only read once.
+     */
+    public void load() {
+        api.getStorage().loadPlayers(false, (playerUUID, username, teamId) -> {
+            api.getKnownPlayers().add(playerUUID);
+            put(playerUUID, username);
+        });
+    }
+
+    /**
+     * Load the names of a snapshot of an earlier run and read only the players changed since.
+     * Falls back to loading all names if the changes can't be read.
+     * @param saved The snapshot section written by {@link #writeSnapshot(ByteBuffer)}
+     * @param since Time from which changes are not contained in the snapshot
+     */
+    public void load(ByteBuffer saved, long since) {
+        if (saved == null) {
+            load();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            int count = saved.getInt();
+            for (int i = 0; i < count; i++) {
+                UUID playerUUID = new UUID(saved.getLong(), saved.getLong());
+                long expiresAt = saved.getLong();
+                byte[] name = new byte[saved.getShort()];
+                saved.get(name);
+
+                api.getKnownPlayers().add(playerUUID);
+                if (expiresAt > now) {
+                    synchronized (names) {
+                        names.put(playerUUID, new Entry(new String(name, StandardCharsets.UTF_8), expiresAt));
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            logger.warning("Ignoring broken player name snapshot");
+            load();
+            return;
+        }
+
+        boolean success = api.getStorage().loadPlayersSince(since, (playerUUID, username, teamId) -> {
+            api.getKnownPlayers().add(playerUUID);
+            put(playerUUID, username);
+        });
+        if (!success) {
+            load();
+        }
+    }
+
+    /**
+     * Get the maximum size of the snapshot written by {@link #writeSnapshot(ByteBuffer)}
+     * @return The size in bytes
+     */
+    public long estimateSnapshotSize() {
+        long size = 4L;
+        synchronized (names) {
+            for (Entry entry : names.values()) {
+                // At most three bytes per char in UTF-8
+                size += 26L + entry.name.length() * 3L;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Write the cached names to a snapshot, which is loaded by {@link #load(ByteBuffer, long)} on the next start
+     * @param buffer The buffer to write to
+     * @return True if written
+     */
+    public boolean writeSnapshot(ByteBuffer buffer) {
+        synchronized (names) {
+            // Least recently used first, so reading them back keeps the order
+            buffer.putInt(names.size());
+            names.forEach((playerUUID, entry) -> {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                buffer.putLong(playerUUID.getMostSignificantBits()).putLong(playerUUID.getLeastSignificantBits())
+                        .putLong(entry.expiresAt).putShort((short) name.length).put(name);
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Set a listener that is called when a name was loaded in the background
+     * @param loadListener The listener
+     */
+    public void setLoadListener(Runnable loadListener) {
+        this.loadListener = loadListener;
+    }
+
+    /**
+     * Get the name of a player without blocking
+     * @param playerUUID The player UUID
+     * @return The name, or null if it is not known yet
+     */
+    public String getName(UUID playerUUID) {
+        Entry entry;
+        synchronized (names) {
+            entry = names.get(playerUUID);
+        }
+
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            return entry.name;
+        }
+
+        Player player = Bukkit.getPlayer(playerUUID);
+        if (player != null) {
+            put(playerUUID, player.getName());
+            return player.getName();
+        }
+
+        loadAsync(playerUUID);
+        return entry != null ? entry.name : null;
+    }
+
+    /**
+     * Cache the name of a player
+     * @param playerUUID The player UUID
+     * @param name The name
+     */
+    public void put(UUID playerUUID, String name) {
+        // Players that were stored while offline have their UUID as name
+        if (name == null || name.equals(playerUUID.toString())) {
+            return;
+        }
+
+        Entry entry = new Entry(name, System.currentTimeMillis() + expireMillis);
+        synchronized (names) {
+            names.put(playerUUID, entry);
+        }
+    }
+
+    /**
+     * Load the name of a player from the storage in the background
+     * @param playerUUID The player UUID
+     */
+    private void loadAsync(UUID playerUUID) {
+        if (!api.getPlugin().isEnabled() || !loading.add(playerUUID)) {
+            return;
+        }
+
+        Bukkit.getScheduler().runTaskAsynchronously(api.getPlugin(), () -> {
+            try {
+                String name = api.getStorage().getPlayerName(playerUUID);
+                if (name == null || name.equals(playerUUID.toString())) {
+                    // Fall back to the server's user cache, off the server thread
+                    name = Bukkit.getOfflinePlayer(playerUUID).getName();
+                }
+
+                if (name != null) {
+                    put(playerUUID, name);
+                    loadListener.run();
+                }
+            } finally {
+                loading.remove(playerUUID);
+            }
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        put(event.getPlayer().getUniqueId(), event.getPlayer().getName());
+    }
+
+    private static final class Entry {
+        final String name;
+        final long expiresAt;
+
+        Entry(String name, long expiresAt) {
+            this.name = name;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.Objective;
+import org.bukkit.scoreboard.Scoreboard;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Renders sidebar scoreboards that are shared by all players.
+ * There is one scoreboard per view. A render only updates the lines that
+ * differ from the previous render, and renders are triggered by a change
+ * signal and limited to one per refresh interval.
+ */
+public class ScoreboardRenderer {
+    /**
+     * The available sidebar views
+     */
+    public enum View {
+        TEAM_POINTS("teamPoints"),
+        PLAYER_POINTS("playerPoints");
+
+        private final String objectiveName;
+
+        View(String objectiveName) {
+            this.objectiveName = objectiveName;
+        }
+    }
+
+    private final JavaPlugin plugin;
+    private final Function<View, List<String>> lineSource;
+    private final long refreshTicks;
+    private final Map<View, Sidebar> sidebars = new EnumMap<>(View.class);
+    private final AtomicBoolean changed = new AtomicBoolean(false);
+
+    /**
+     * Create a new scoreboard renderer
+     * @param plugin The plugin used to schedule renders
+     * @param lineSource Builds the lines of a view, from top to bottom
+     * @param refreshTicks Minimum number of ticks between two renders
+     */
+    public ScoreboardRenderer(JavaPlugin plugin, Function<View, List<String>> lineSource, long refreshTicks) {
+        this.plugin = plugin;
+        this.lineSource = lineSource;
+        this.refreshTicks = Math.max(1L, refreshTicks);
+    }
+
+    /**
+     * Show a view to a player. Must be called on the server thread.
+     * @param player The player
+     * @param view The view
+     * @param title The sidebar title
+     */
+    public void show(Player player, View view, String title) {
+        Sidebar sidebar = sidebars.computeIfAbsent(view, this::createSidebar);
+        if (!title.equals(sidebar.title)) {
+            sidebar.objective.setDisplayName(title);
+            sidebar.title = title;
+        }
+
+        if (player.getScoreboard() != sidebar.scoreboard) {
+            player.setScoreboard(sidebar.scoreboard);
+        }
+    }
+
+    /**
+     * Signal that the displayed data has changed. Can be called from any thread;
+     * changes are collected and rendered once after the refresh interval.
+     */
+    public void markChanged() {
+        if (changed.get() || !changed.compareAndSet(false, true)) {
+            return;
+        }
+
+        // Without a scheduled render the flag would stay set and swallow all later changes
+        if (!plugin.isEnabled()) {
+            changed.set(false);
+            return;
+        }
+        try {
+            Bukkit.getScheduler().runTaskLater(plugin, this::renderChanged, refreshTicks);
+        } catch (RuntimeException e) {
+            changed.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Render all views now. Must be called on the server thread.
+     */
+    public void renderAll() {
+        changed.set(false);
+        for (Map.Entry<View, Sidebar> entry : sidebars.entrySet()) {
+            render(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void renderChanged() {
+        if (changed.get()) {
+            renderAll();
+        }
+    }
+
+    private Sidebar createSidebar(View view) {
+        Scoreboard scoreboard = Bukkit.getScoreboardManager().getNewScoreboard();
+        Objective objective = scoreboard.registerNewObjective(view.objectiveName, "dummy", view.objectiveName);
+        objective.setDisplaySlot(DisplaySlot.SIDEBAR);
+
+        Sidebar sidebar = new Sidebar(scoreboard, objective);
+        render(view, sidebar);
+        return sidebar;
+    }
+
+    /**
+     * Update the lines of a sidebar that differ from the last render
+     */
+    private void render(View view, Sidebar sidebar) {
+        List<String> lines = lineSource.apply(view);
+
+        // Top line gets the highest score
+        Map<String, Integer> target = new LinkedHashMap<>();
+        int score = lines.size();
+        for (String line : lines) {
+            target.putIfAbsent(line, score--);
+        }
+
+        Iterator<Map.Entry<String, Integer>> iterator = sidebar.rendered.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String line = iterator.next().getKey();
+            if (!target.containsKey(line)) {
+                sidebar.scoreboard.resetScores(line);
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : target.entrySet()) {
+            Integer previous = sidebar.rendered.put(entry.getKey(), entry.getValue());
+            if (previous == null || previous.intValue() != entry.getValue()) {
+                sidebar.objective.getScore(entry.getKey()).setScore(entry.getValue());
+            }
+        }
+    }
+
+    private static final class Sidebar {
+        final Scoreboard scoreboard;
+        final Objective objective;
+        final Map<String, Integer> rendered = new HashMap<>();
+        String title;
+
+        Sidebar(Scoreboard scoreboard, Objective objective) {
+            this.scoreboard = scoreboard;
+            this.objective = objective;
+        }
+    }
+}
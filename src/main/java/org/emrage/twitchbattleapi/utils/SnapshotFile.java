@@ -0,0 +1,257 @@
+package org.emrage.twitchbattleapi.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary file holding the cached state of an earlier run. The file is read into
+ * and written from a heap buffer in one go; a memory mapping would keep the file
+ * open until garbage collected, which blocks replacing it on Windows.
+ * The header stores a format version, the data source the state was read from,
+ * the creation time and the time from which changes in the data source are not
+ * contained. The rest of the file consists of sections written by the caches.
+ */
+public class SnapshotFile {
+    /**
+     * Format version, files of other versions are ignored
+     */
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x54424153; // "TBAS"
+    private static final int HEADER_SIZE = 36;
+
+    /**
+     * Writes one section of the file
+     */
+    public interface Section {
+        /**
+         * Get the maximum number of bytes the section needs
+         * @return The size in bytes
+         */
+        long estimateSize();
+
+        /**
+         * Write the section
+         * @param buffer Buffer positioned at the start of the section
+         * @return True if written, false if the state must not be stored
+         */
+        boolean write(ByteBuffer buffer);
+    }
+
+    /**
+     * Create a section from two methods of a cache
+     * @param estimateSize Returns the maximum size of the section in bytes
+     * @param writer Writes the section, returns false if the state must not be stored
+     * @return The section
+     */
+    public static Section section(LongSupplier estimateSize, Predicate<ByteBuffer> writer) {
+        return new Section() {
+            @Override
+            public long estimateSize() {
+                return estimateSize.getAsLong();
+            }
+
+            @Override
+            public boolean write(ByteBuffer buffer) {
+                return writer.test(buffer);
+            }
+        };
+    }
+
+    private final File file;
+    private final long source;
+    private final Logger logger = Logger.getLogger("TwitchBattleAPI");
+    private ByteBuffer content;
+    private long createdAt;
+    private long validFrom;
+
+    /**
+     * Create a new snapshot file
+     * @param file The file
+     * @param source Identifies the data source, snapshots of other sources are ignored
+     */
+    public SnapshotFile(File file, long source) {
+        this.file = file;
+        this.source = source;
+    }
+
+    /**
+     * Read the file and check its header
+     * @return True if the file exists and belongs to this version and source
+     */
+    public boolean read() {
+        if (!file.isFile()) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                logger.warning("Ignoring snapshot " + file.getName() + " with invalid size");
+                return false;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            if (buffer.hasRemaining()) {
+                logger.warning("Ignoring snapshot " + file.getName() + " that changed while it was read");
+                return false;
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                logger.info("Ignoring snapshot " + file.getName() + " of another version");
+                return false;
+            }
+            if (buffer.getLong(8) != source) {
+                logger.info("Ignoring snapshot " + file.getName() + " of another database");
+                return false;
+            }
+
+            if (!checkSections(buffer)) {
+                logger.warning("Ignoring broken snapshot " + file.getName());
+                return false;
+            }
+
+            this.createdAt = buffer.getLong(16);
+            this.validFrom = buffer.getLong(24);
+            this.content = buffer;
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read snapshot " + file.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Check that all sections lie within the file
+     */
+    private static boolean checkSections(ByteBuffer buffer) {
+        int count = buffer.getInt(32);
+        if (count < 0 || count > (buffer.capacity() - HEADER_SIZE) / 8) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int offset = buffer.getInt(HEADER_SIZE + i * 8);
+            int length = buffer.getInt(HEADER_SIZE + i * 8 + 4);
+            if (offset < HEADER_SIZE + count * 8 || length < 0 || offset > buffer.capacity() - length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the time the snapshot was written
+     * @return Time in milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Get the time from which changes are not contained in the snapshot
+     * @return Time in milliseconds
+     */
+    public long getValidFrom() {
+        return validFrom;
+    }
+
+    /**
+     * Get a section of the file that was read
+     * @param index Index of the section
+     * @return Read-only buffer holding the section, or null if the file has no such section
+     */
+    public ByteBuffer getSection(int index) {
+        if (content == null || index >= content.getInt(32)) {
+            return null;
+        }
+
+        int entry = HEADER_SIZE + index * 8;
+        int offset = content.getInt(entry);
+        int length = content.getInt(entry + 4);
+        return content.slice(offset, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Release the content of the file that was read
+     */
+    public void release() {
+        content = null;
+    }
+
+    /**
+     * Write the file. It is written to a temporary file first and replaces the
+     * existing file once complete, so a crash can't leave a broken snapshot behind.
+     * @param validFrom Time from which changes are not contained in the snapshot
+     * @param sections The sections
+     * @return True if written, false otherwise
+     */
+    public boolean write(long validFrom, List<Section> sections) {
+        long size = HEADER_SIZE + sections.size() * 8L;
+        for (Section section : sections) {
+            size += section.estimateSize();
+        }
+        if (size > Integer.MAX_VALUE) {
+            logger.warning("Not writing snapshot " + file.getName() + ", it would exceed 2 GB");
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        try {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(source).putLong(System.currentTimeMillis()).putLong(validFrom)
+                    .putInt(sections.size());
+            buffer.position(HEADER_SIZE + sections.size() * 8);
+
+            for (int i = 0; i < sections.size(); i++) {
+                int offset = buffer.position();
+                if (!sections.get(i).write(buffer)) {
+                    return false;
+                }
+                buffer.putInt(HEADER_SIZE + i * 8, offset);
+                buffer.putInt(HEADER_SIZE + i * 8 + 4, buffer.position() - offset);
+            }
+        } catch (BufferOverflowException e) {
+            // The state grew while it was written
+            logger.warning("Not writing snapshot " + file.getName() + ", the state changed while it was written");
+            return false;
+        }
+        buffer.flip();
+
+        Path temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp").toPath();
+        try {
+            Files.createDirectories(temp.getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            // The previous snapshot stays usable, it only contains fewer of the changes
+            logger.log(Level.WARNING, "Failed to write snapshot " + file.getName(), e);
+            return false;
+        }
+    }
+}
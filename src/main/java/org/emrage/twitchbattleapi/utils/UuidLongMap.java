@@ -0,0 +1,510 @@
+package org.emrage.twitchbattleapi.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe map from UUID to long without boxing.
+ * A UUID is stored as its two long halves in an open-addressing table with
+ * linear probing. The map is split into stripes with their own lock, so
+ * writers only block each other when they hit the same stripe, and reads
+ * are optimistic and normally take no lock at all.
+ */
+public class UuidLongMap {
+    private static final int STRIPES = 16;
+    private static final int STRIPE_SHIFT = 60;
+    // Returned by lookups of the map view; only a key that really maps to this value needs a second lookup
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Create a new map
+     */
+    public UuidLongMap() {
+        this(64);
+    }
+
+    /**
+     * Create a new map
+     * @param expectedSize The expected number of entries
+     */
+    public UuidLongMap(int expectedSize) {
+        int perStripe = Math.max(4, expectedSize / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Spread the bits of a UUID into a hash
+     */
+    private static long hash(long msb, long lsb) {
+        long h = msb * 31 + lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> STRIPE_SHIFT)];
+    }
+
+    /**
+     * Get the value of a key
+     * @param key The key
+     * @param defaultValue The value to return if the key is not present
+     * @return The value, or the default value
+     */
+    public long get(UUID key, long defaultValue) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits(), defaultValue);
+    }
+
+    /**
+     * Get the value of a key
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @param defaultValue The value to return if the key is not present
+     * @return The value, or the default value
+     */
+    public long get(long msb, long lsb, long defaultValue) {
+        long hash = hash(msb, lsb);
+        return stripe(hash).get(msb, lsb, hash, defaultValue);
+    }
+
+    /**
+     * Check whether a key is present
+     * @param key The key
+     * @return True if the key is present
+     */
+    public boolean containsKey(UUID key) {
+        return containsKey(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Check whether a key is present
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return True if the key is present
+     */
+    public boolean containsKey(long msb, long lsb) {
+        long hash = hash(msb, lsb);
+        return stripe(hash).contains(msb, lsb, hash);
+    }
+
+    /**
+     * Set the value of a key
+     * @param key The key
+     * @param value The value
+     */
+    public void put(UUID key, long value) {
+        put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * Set the value of a key
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @param value The value
+     */
+    public void put(long msb, long lsb, long value) {
+        long hash = hash(msb, lsb);
+        stripe(hash).update(msb, lsb, hash, value, false);
+    }
+
+    /**
+     * Add to the value of a key, starting at 0 if the key is not present
+     * @param key The key
+     * @param delta The value to add
+     * @return The new value
+     */
+    public long addTo(UUID key, long delta) {
+        return addTo(key.getMostSignificantBits(), key.getLeastSignificantBits(), delta);
+    }
+
+    /**
+     * Add to the value of a key, starting at 0 if the key is not present
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @param delta The value to add
+     * @return The new value
+     */
+    public long addTo(long msb, long lsb, long delta) {
+        long hash = hash(msb, lsb);
+        return stripe(hash).update(msb, lsb, hash, delta, true);
+    }
+
+    /**
+     * Remove a key
+     * @param key The key
+     * @return True if the key was present
+     */
+    public boolean remove(UUID key) {
+        return remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Remove a key
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return True if the key was present
+     */
+    public boolean remove(long msb, long lsb) {
+        long hash = hash(msb, lsb);
+        return stripe(hash).remove(msb, lsb, hash);
+    }
+
+    /**
+     * Get the number of entries
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.table = new Table(stripe.table.used.length);
+                stripe.size = 0;
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Iterate over a consistent snapshot of all entries.
+     * Writers are blocked during the iteration, so the action must not modify this map.
+     * @param action The action to run for every entry
+     */
+    public void forEach(EntryConsumer action) {
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamps[i] = stripes[i].lock.readLock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                Table table = stripe.table;
+                for (int i = 0; i < table.used.length; i++) {
+                    if (table.used[i]) {
+                        action.accept(table.keys[i << 1], table.keys[(i << 1) + 1], table.values[i]);
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i].lock.unlockRead(stamps[i]);
+            }
+        }
+    }
+
+    /**
+     * Get a read-only map view. Lookups go directly to this map; iteration copies
+     * one stripe at a time and does not reflect changes to stripes it has already passed.
+     * @return The map view
+     */
+    public Map<UUID, Long> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * Receives the entries of a map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * Accept an entry
+         * @param msb The most significant bits of the key
+         * @param lsb The least significant bits of the key
+         * @param value The value
+         */
+        void accept(long msb, long lsb, long value);
+    }
+
+    /**
+     * Open-addressing table, replaced as a whole when it grows
+     */
+    private static final class Table {
+        final long[] keys;
+        final long[] values;
+        final boolean[] used;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new long[capacity << 1];
+            this.values = new long[capacity];
+            this.used = new boolean[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Find the slot of a key
+         * @return The slot, or -(insertion slot + 1) if the key is not present
+         */
+        int find(long msb, long lsb, long hash) {
+            int slot = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (!used[slot]) {
+                    return -(slot + 1);
+                }
+                if (keys[slot << 1] == msb && keys[(slot << 1) + 1] == lsb) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -(mask + 2);
+        }
+
+        void set(int slot, long msb, long lsb, long value) {
+            keys[slot << 1] = msb;
+            keys[(slot << 1) + 1] = lsb;
+            values[slot] = value;
+            used[slot] = true;
+        }
+    }
+
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        Table table;
+        int size;
+
+        Stripe(int expectedSize) {
+            int capacity = 8;
+            while (capacity * 3 < expectedSize * 4) {
+                capacity <<= 1;
+            }
+            this.table = new Table(capacity);
+        }
+
+        long get(long msb, long lsb, long hash, long defaultValue) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Table t = table;
+                int slot = t.find(msb, lsb, hash);
+                long value = slot >= 0 ? t.values[slot] : defaultValue;
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                Table t = table;
+                int slot = t.find(msb, lsb, hash);
+                return slot >= 0 ? t.values[slot] : defaultValue;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        boolean contains(long msb, long lsb, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                boolean found = table.find(msb, lsb, hash) >= 0;
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                return table.find(msb, lsb, hash) >= 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long update(long msb, long lsb, long hash, long value, boolean add) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = table.find(msb, lsb, hash);
+                if (slot >= 0) {
+                    long newValue = add ? table.values[slot] + value : value;
+                    table.values[slot] = newValue;
+                    return newValue;
+                }
+
+                // Keep the load factor at or below 3/4
+                if ((size + 1) * 4 > table.used.length * 3) {
+                    grow();
+                    slot = table.find(msb, lsb, hash);
+                }
+                table.set(-(slot + 1), msb, lsb, value);
+                size++;
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long msb, long lsb, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = table.find(msb, lsb, hash);
+                if (slot < 0) {
+                    return false;
+                }
+                removeAt(slot);
+                size--;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Remove a slot and shift following entries back so no probe chain is broken
+         */
+        private void removeAt(int slot) {
+            Table t = table;
+            int mask = t.mask;
+            int free = slot;
+            int current = slot;
+            while (true) {
+                current = (current + 1) & mask;
+                if (!t.used[current]) {
+                    break;
+                }
+                long msb = t.keys[current << 1];
+                long lsb = t.keys[(current << 1) + 1];
+                int home = (int) hash(msb, lsb) & mask;
+
+                // Move the entry if its home slot is not between the free slot and its current slot
+                boolean stays = free <= current
+                        ? free < home && home <= current
+                        : free < home || home <= current;
+                if (!stays) {
+                    t.set(free, msb, lsb, t.values[current]);
+                    free = current;
+                }
+            }
+            t.used[free] = false;
+        }
+
+        private void grow() {
+            Table old = table;
+            Table grown = new Table(old.used.length << 1);
+            for (int i = 0; i < old.used.length; i++) {
+                if (old.used[i]) {
+                    long msb = old.keys[i << 1];
+                    long lsb = old.keys[(i << 1) + 1];
+                    int slot = grown.find(msb, lsb, hash(msb, lsb));
+                    grown.set(-(slot + 1), msb, lsb, old.values[i]);
+                }
+            }
+            table = grown;
+        }
+
+        /**
+         * Copy the entries of this stripe
+         * @return Keys (msb, lsb pairs) followed by values
+         */
+        long[] copy() {
+            long stamp = lock.readLock();
+            try {
+                Table t = table;
+                long[] copy = new long[size * 3];
+                int index = 0;
+                for (int i = 0; i < t.used.length; i++) {
+                    if (t.used[i]) {
+                        copy[index++] = t.keys[i << 1];
+                        copy[index++] = t.keys[(i << 1) + 1];
+                        copy[index++] = t.values[i];
+                    }
+                }
+                return copy;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private final class MapView extends AbstractMap<UUID, Long> {
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof UUID uuid)) {
+                return null;
+            }
+            long value = UuidLongMap.this.get(uuid, MISSING);
+            if (value == MISSING && !UuidLongMap.this.containsKey(uuid)) {
+                return null;
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof UUID uuid && UuidLongMap.this.containsKey(uuid);
+        }
+
+        @Override
+        public int size() {
+            return UuidLongMap.this.size();
+        }
+
+        @Override
+        public Set<Entry<UUID, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<UUID, Long>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return UuidLongMap.this.size();
+                }
+            };
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<UUID, Long>> {
+        private int stripe = 0;
+        private long[] entries = new long[0];
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+            while (index >= entries.length) {
+                if (stripe >= STRIPES) {
+                    return false;
+                }
+                entries = stripes[stripe++].copy();
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<UUID, Long> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            UUID key = new UUID(entries[index], entries[index + 1]);
+            long value = entries[index + 2];
+            index += 3;
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.emrage.twitchbattleapi.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseExecutorTest {
+    private final DatabaseExecutor executor = new DatabaseExecutor(1, 100);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        executor.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void supplyReturnsResult() throws Exception {
+        assertEquals(42, executor.supply(() -> 42).get(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getOperationCount());
+        assertEquals(0, executor.getTimeoutCount());
+    }
+
+    @Test
+    void supplyPassesFailureOn() {
+        CompletableFuture<Object> future = executor.supply(() -> {
+            throw new IllegalStateException("failed");
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void operationIsNotRunAfterItsFutureTimedOut() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        executor.execute(() -> {
+            holding.countDown();
+            awaitRelease();
+        });
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Boolean> future = executor.supply(() -> ran.getAndSet(true));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+
+        // Free the slot right after the timeout, the waiting operation must still give up
+        release.countDown();
+        assertEquals(7, executor.supply(() -> 7).get(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+        assertEquals(1, executor.getTimeoutCount());
+    }
+
+    @Test
+    void waitingForSlotCountsAgainstTimeout() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        executor.execute(() -> {
+            holding.countDown();
+            sleep(80);
+        });
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        // Gets the slot after about 80ms, then runs past the 100ms from submitting
+        CompletableFuture<Boolean> future = executor.supply(() -> {
+            sleep(60);
+            return true;
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.emrage.twitchbattleapi.database;
+
+import org.emrage.twitchbattleapi.database.DatabaseMetrics.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseMetricsTest {
+    private final DatabaseMetrics metrics = new DatabaseMetrics();
+
+    @Test
+    void recordsCountsErrorsAndSlowOperations() {
+        metrics.setSlowQueryThreshold(50);
+        metrics.record("points", Operation.BULK_WRITE, started(1), true, null);
+        metrics.record("points", Operation.BULK_WRITE, started(200), false, "batch");
+
+        OperationStats stats = metrics.getStats("points", Operation.BULK_WRITE);
+        assertEquals(2L, stats.getCount());
+        assertEquals(1L, stats.getErrors());
+        assertEquals(1L, stats.getSlowCount());
+        assertTrue(stats.getMaxMicros() >= TimeUnit.MILLISECONDS.toMicros(200));
+        assertTrue(stats.getP50Micros() >= TimeUnit.MILLISECONDS.toMicros(1));
+        assertTrue(stats.getP50Micros() < TimeUnit.MILLISECONDS.toMicros(200));
+        assertEquals(stats.getMaxMicros(), stats.getP999Micros());
+
+        assertEquals(List.of(stats), metrics.getAllStats());
+        assertEquals(0L, metrics.getStats("points", Operation.FIND).getCount());
+    }
+
+    @Test
+    void registriesReceiveEveryOperation() {
+        List<String> received = new ArrayList<>();
+        MetricsRegistry registry = (collection, operation, durationNanos, success) ->
+                received.add(collection + "." + operation + ":" + success);
+        metrics.addRegistry(registry);
+        metrics.record("teams", Operation.FIND_ONE, started(0), true, null);
+        metrics.removeRegistry(registry);
+        metrics.record("teams", Operation.FIND_ONE, started(0), false, null);
+
+        assertEquals(List.of("teams.findOne:true"), received);
+        assertEquals(2L, metrics.getStats("teams", Operation.FIND_ONE).getCount());
+    }
+
+    @Test
+    void resetClearsStatistics() {
+        metrics.record("players", Operation.UPSERT, started(1), false, null);
+        OperationStats stats = metrics.getStats("players", Operation.UPSERT);
+        stats.reset();
+
+        assertEquals(0L, stats.getCount());
+        assertEquals(0L, stats.getErrors());
+        assertEquals(0L, stats.getP99Micros());
+        assertTrue(metrics.getAllStats().isEmpty());
+    }
+
+    private static long started(long millisAgo) {
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millisAgo);
+    }
+}
@@ -0,0 +1,97 @@
+package org.emrage.twitchbattleapi.points;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LeaderboardTest {
+    private final Map<Integer, Long> points = new HashMap<>();
+    private final Leaderboard<Integer> leaderboard = new Leaderboard<>(key -> points.getOrDefault(key, Leaderboard.ABSENT));
+
+    @Test
+    void matchesSortedListUnderRandomChanges() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            points.clear();
+            leaderboard.clear();
+            int keySpace = 5 + random.nextInt(200);
+            // A narrow range of points produces many ties
+            int range = 1 + random.nextInt(20);
+
+            for (int step = 0; step < 5000; step++) {
+                int key = random.nextInt(keySpace);
+                switch (random.nextInt(4)) {
+                    case 0 -> points.remove(key);
+                    case 1 -> points.merge(key, (long) random.nextInt(range) - range / 2, Long::sum);
+                    default -> points.put(key, (long) random.nextInt(range));
+                }
+                leaderboard.markDirty(key);
+
+                // Let several changes pile up before the leaderboard re-ranks them
+                if (random.nextInt(10) == 0) {
+                    assertMatchesReference(random.nextInt(keySpace + 2), keySpace);
+                }
+            }
+            assertMatchesReference(keySpace, keySpace);
+        }
+    }
+
+    @Test
+    void tiesAreOrderedByKey() {
+        points.put(3, 10L);
+        points.put(1, 10L);
+        points.put(2, 20L);
+        points.put(4, 10L);
+        points.keySet().forEach(leaderboard::markDirty);
+
+        assertEquals(List.of(2, 1, 3, 4), new ArrayList<>(leaderboard.getTop(10).keySet()));
+        assertEquals(1, leaderboard.getRank(2));
+        assertEquals(2, leaderboard.getRank(1));
+        assertEquals(4, leaderboard.getRank(4));
+        assertEquals(-1, leaderboard.getRank(5));
+    }
+
+    @Test
+    void unchangedMarkIsIgnored() {
+        points.put(1, 5L);
+        leaderboard.markDirty(1);
+        assertEquals(1, leaderboard.size());
+
+        leaderboard.markDirty(1);
+        leaderboard.markDirty(2);
+        assertEquals(1, leaderboard.size());
+        assertEquals(Map.of(1, 5L), leaderboard.getTop(10));
+    }
+
+    private void assertMatchesReference(int limit, int keySpace) {
+        List<Map.Entry<Integer, Long>> sorted = new ArrayList<>(points.entrySet());
+        sorted.sort(Comparator.comparing((Map.Entry<Integer, Long> e) -> -e.getValue())
+                .thenComparing(Map.Entry::getKey));
+
+        Map<Integer, Long> expectedTop = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Long> entry : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            expectedTop.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(new ArrayList<>(expectedTop.entrySet()), new ArrayList<>(leaderboard.getTop(limit).entrySet()));
+        assertEquals(sorted.size(), leaderboard.size());
+
+        for (int key = 0; key < keySpace; key++) {
+            int expectedRank = -1;
+            for (int i = 0; i < sorted.size(); i++) {
+                if (sorted.get(i).getKey() == key) {
+                    expectedRank = i + 1;
+                    break;
+                }
+            }
+            assertEquals(expectedRank, leaderboard.getRank(key), "rank of " + key);
+        }
+    }
+}
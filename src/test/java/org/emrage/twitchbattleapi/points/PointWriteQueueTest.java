@@ -0,0 +1,216 @@
+package org.emrage.twitchbattleapi.points;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PointWriteQueueTest {
+    private final List<Map<Object, PointDelta>> batches = new ArrayList<>();
+    private PointWriteQueue queue;
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    private PointWriteQueue create(Function<Map<Object, PointDelta>, Collection<Object>> writer) {
+        // Long interval, so only the test triggers flushes
+        queue = new PointWriteQueue(batch -> {
+            synchronized (batches) {
+                batches.add(new LinkedHashMap<>(batch));
+            }
+            return writer.apply(batch);
+        }, TimeUnit.HOURS.toMillis(1), 16);
+        return queue;
+    }
+
+    @Test
+    void deltaMergesAddAfterSet() {
+        assertEquals("=15", PointDelta.set(10).then(PointDelta.add(5)).toString());
+        assertEquals("=3", PointDelta.add(10).then(PointDelta.set(3)).toString());
+        assertEquals("+7", PointDelta.add(10).then(PointDelta.add(-3)).toString());
+        assertTrue(PointDelta.set(0).then(PointDelta.add(1)).isAbsolute());
+    }
+
+    @Test
+    void addAfterSetIsWrittenAsOneAbsoluteChange() {
+        PointWriteQueue queue = create(batch -> Set.of());
+        queue.enqueue("a", PointDelta.add(4));
+        queue.enqueue("a", PointDelta.set(10));
+        queue.enqueue("a", PointDelta.add(5));
+        assertEquals("=15", queue.getPending("a").toString());
+
+        queue.flush();
+        assertEquals(1, batches.size());
+        assertEquals("=15", batches.get(0).get("a").toString());
+        assertNull(queue.getPending("a"));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void failedKeysAreWrittenAgainBeforeLaterChanges() {
+        PointWriteQueue queue = create(batch -> {
+            if (batches.size() == 1) {
+                // Changes arriving while the first write is running
+                this.queue.enqueue("a", PointDelta.add(3));
+                this.queue.enqueue("b", PointDelta.add(1));
+                return List.of("a");
+            }
+            return List.of();
+        });
+        queue.enqueue("a", PointDelta.set(10));
+        queue.enqueue("b", PointDelta.add(2));
+
+        queue.flush();
+        assertEquals("=13", queue.getPending("a").toString());
+        assertEquals("+1", queue.getPending("b").toString());
+
+        queue.flush();
+        assertEquals(2, batches.size());
+        assertEquals("=13", batches.get(1).get("a").toString());
+        assertEquals("+1", batches.get(1).get("b").toString());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void writerExceptionKeepsWholeBatch() {
+        PointWriteQueue queue = create(batch -> {
+            if (batches.size() == 1) {
+                throw new IllegalStateException("database down");
+            }
+            return List.of();
+        });
+        queue.enqueue("a", PointDelta.add(1));
+        queue.enqueue("b", PointDelta.add(2));
+
+        queue.flush();
+        assertEquals(2, queue.size());
+
+        queue.flush();
+        assertEquals(Map.of("a", "+1", "b", "+2"), asStrings(batches.get(1)));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void fullQueueFlushesInsteadOfDroppingKeys() {
+        PointWriteQueue queue = create(batch -> Set.of());
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(i, PointDelta.add(i));
+        }
+        queue.flush();
+
+        Map<Object, String> written = new LinkedHashMap<>();
+        synchronized (batches) {
+            batches.forEach(batch -> written.putAll(asStrings(batch)));
+        }
+        assertEquals(100, written.size());
+        assertEquals("+42", written.get(42));
+    }
+
+    @Test
+    void shutdownWritesChangesQueuedDuringRunningFlush() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PointWriteQueue queue = create(batch -> {
+            if (batches.size() == 1) {
+                writing.countDown();
+                await(release);
+            }
+            return List.of();
+        });
+        queue.enqueue("a", PointDelta.add(1));
+
+        Thread background = new Thread(queue::flush);
+        background.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        queue.enqueue("a", PointDelta.add(2));
+        queue.enqueue("b", PointDelta.set(5));
+
+        Thread shutdown = new Thread(queue::shutdown);
+        shutdown.start();
+        release.countDown();
+        shutdown.join(TimeUnit.SECONDS.toMillis(15));
+        background.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(shutdown.isAlive());
+
+        assertEquals(2, batches.size());
+        assertEquals(Map.of("a", "+1"), asStrings(batches.get(0)));
+        assertEquals(Map.of("a", "+2", "b", "=5"), asStrings(batches.get(1)));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void failedKeyWaitsForItsRetryDelay() {
+        queue = new PointWriteQueue(batch -> {
+            batches.add(new LinkedHashMap<>(batch));
+            return batches.size() == 1 ? List.of("a") : List.of();
+        }, TimeUnit.HOURS.toMillis(1), 16, null, 3);
+        queue.enqueue("a", PointDelta.add(1));
+        queue.enqueue("b", PointDelta.add(2));
+        queue.flush(false);
+
+        // Later changes of other keys are written, the failed key waits
+        queue.enqueue("a", PointDelta.add(3));
+        queue.enqueue("c", PointDelta.add(4));
+        queue.flush(false);
+        assertEquals(Map.of("c", "+4"), asStrings(batches.get(1)));
+        assertEquals("+4", queue.getPending("a").toString());
+
+        // An explicit flush does not wait
+        queue.flush();
+        assertEquals(Map.of("a", "+4"), asStrings(batches.get(2)));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void keyIsGivenUpAfterMaxAttempts() {
+        queue = new PointWriteQueue(batch -> {
+            batches.add(new LinkedHashMap<>(batch));
+            return List.copyOf(batch.keySet());
+        }, TimeUnit.HOURS.toMillis(1), 16, null, 3);
+        queue.enqueue("a", PointDelta.set(7));
+        queue.flush();
+        queue.flush();
+        assertEquals(1, queue.size());
+        assertTrue(queue.getFailedChanges().isEmpty());
+
+        queue.flush();
+        assertEquals(3, batches.size());
+        assertEquals(0, queue.size());
+        assertEquals(Map.of("a", "=7"), asStrings(queue.getFailedChanges()));
+
+        // Nothing left to write
+        queue.flush();
+        assertEquals(3, batches.size());
+    }
+
+    private static Map<Object, String> asStrings(Map<Object, PointDelta> batch) {
+        Map<Object, String> strings = new LinkedHashMap<>();
+        batch.forEach((key, delta) -> strings.put(key, delta.toString()));
+        return strings;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.emrage.twitchbattleapi.points;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteTrackerTest {
+    private final WriteTracker tracker = new WriteTracker("server-a");
+
+    // Points of one key as a document from the sync: the stored points and the last sequence of this server
+    private long database = 100;
+    private long acknowledged = 0;
+    // Cached points of this server
+    private long local = 100;
+    private PointWriteQueue queue;
+
+    @Test
+    void taggedChangeRecordsWriteSequence() {
+        PointDelta tagged = tracker.begin("a", PointDelta.add(5), true);
+        Document update = tagged.toUpdate();
+        assertEquals(new Document("points", 5L), update.get("$inc"));
+        assertEquals(new Document("writes.server-a", tagged.getSequence()), update.get("$max"));
+        assertNull(PointDelta.add(5).toUpdate().get("$max"));
+
+        // Merged changes are not tagged, they get a new sequence when written
+        assertNull(tagged.then(PointDelta.add(1)).toUpdate().get("$max"));
+        assertNull(PointDelta.add(1).then(tagged).toUpdate().get("$max"));
+        assertTrue(tracker.begin("a", PointDelta.add(1), true).getSequence() > tagged.getSequence());
+    }
+
+    @Test
+    void ownWriteSeenBySyncBeforeItReturnsIsNotCountedTwice() {
+        PointDelta tagged = tracker.begin("a", PointDelta.add(10), false);
+        write(tagged);
+
+        // The sync delivers the document before the write call returns
+        applyRemote();
+        assertEquals(110, local);
+
+        assertFalse(tracker.applied("a", tagged.getSequence()));
+        assertEquals(110, local);
+    }
+
+    @Test
+    void documentWithoutOwnWriteDoesNotLoseIt() {
+        PointDelta tagged = tracker.begin("a", PointDelta.add(10), false);
+
+        // Another server's change arrives before this write reaches the database
+        database += 1;
+        applyRemote();
+        assertEquals(101, local);
+
+        write(tagged);
+        assertTrue(tracker.applied("a", tagged.getSequence()));
+        local += 10;
+        assertEquals(111, local);
+
+        applyRemote();
+        assertEquals(111, local);
+    }
+
+    @Test
+    void writeInFlightIsKeptUntilTheSyncHasSeenIt() {
+        // Write-behind: the change is already in memory while the batch is written
+        local += 10;
+        PointDelta tagged = tracker.begin("a", PointDelta.add(10), true);
+
+        applyRemote();
+        assertEquals(110, local);
+
+        write(tagged);
+        applyRemote();
+        assertEquals(110, local);
+        assertNull(tracker.unacknowledged("a", acknowledged));
+    }
+
+    @Test
+    void failedWriteIsForgotten() {
+        PointDelta tagged = tracker.begin("a", PointDelta.add(10), true);
+        tracker.fail("a", tagged.getSequence());
+        assertNull(tracker.unacknowledged("a", 0L));
+        assertFalse(tracker.applied("a", tagged.getSequence()));
+    }
+
+    @Test
+    void writeQueueTracksBatchWhileWriting() {
+        queue = new PointWriteQueue(batch -> {
+            // The sync delivers a document written before this batch while the batch is written
+            applyRemote();
+            batch.values().forEach(this::write);
+            return List.of();
+        }, TimeUnit.HOURS.toMillis(1), 16, tracker);
+        try {
+            local += 10;
+            queue.enqueue("a", PointDelta.add(10));
+            queue.flush();
+            assertEquals(110, local);
+
+            applyRemote();
+            assertEquals(110, local);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void failedBatchMovesBackToPending() {
+        queue = new PointWriteQueue(batch -> {
+            applyRemote();
+            return List.copyOf(batch.keySet());
+        }, TimeUnit.HOURS.toMillis(1), 16, tracker);
+        try {
+            local += 10;
+            queue.enqueue("a", PointDelta.add(10));
+            queue.flush();
+            assertEquals(110, local);
+            assertEquals("+10", queue.getPending("a").toString());
+
+            applyRemote();
+            assertEquals(110, local);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void oldWritesAreDroppedWhenTheSyncFallsBehind() {
+        for (int i = 0; i < 1000; i++) {
+            tracker.begin("a", PointDelta.add(1), true);
+        }
+        assertEquals(256, tracker.unacknowledged("a", 0L).getValue());
+    }
+
+    private void write(PointDelta tagged) {
+        database = tagged.applyTo(database);
+        acknowledged = Math.max(acknowledged, tagged.getSequence());
+    }
+
+    /**
+     * Same as {@link PointSystem#applyRemote(Document)} for the key "a"
+     */
+    private void applyRemote() {
+        synchronized (tracker) {
+            long points = database;
+            PointDelta unacknowledged = tracker.unacknowledged("a", acknowledged);
+            if (unacknowledged != null) {
+                points = unacknowledged.applyTo(points);
+            }
+            PointDelta pending = queue != null ? queue.getPending("a") : null;
+            local = pending != null ? pending.applyTo(points) : points;
+        }
+    }
+}
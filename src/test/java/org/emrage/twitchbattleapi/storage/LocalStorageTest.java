@@ -0,0 +1,146 @@
+package org.emrage.twitchbattleapi.storage;
+
+import org.emrage.twitchbattleapi.points.PointDelta;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalStorageTest {
+    @TempDir
+    Path dir;
+
+    private LocalStorage open(int snapshotInterval) {
+        LocalStorage storage = new LocalStorage(dir.toFile(), snapshotInterval, false);
+        assertTrue(storage.open());
+        return storage;
+    }
+
+    private static Map<Object, Long> points(LocalStorage storage) {
+        Map<Object, Long> points = new HashMap<>();
+        assertTrue(storage.loadPoints((key, value, id) -> points.put(key, value)));
+        return points;
+    }
+
+    private static boolean write(LocalStorage storage, Object key, PointDelta delta) {
+        return storage.writePoints(Map.of(key, delta)).isEmpty();
+    }
+
+    @Test
+    void journalIsReplayedAfterCrash() {
+        UUID player = UUID.randomUUID();
+        LocalStorage storage = open(1000);
+        assertTrue(storage.ensurePlayers(Map.of(player, "Steve")).isEmpty());
+        assertTrue(write(storage, 1, PointDelta.add(5)));
+        assertTrue(write(storage, 1, PointDelta.add(3)));
+        assertTrue(write(storage, player, PointDelta.set(7)));
+        assertTrue(write(storage, 2, PointDelta.add(1)));
+        assertTrue(storage.deletePoints(true));
+        assertTrue(write(storage, 3, PointDelta.add(4)));
+        // No close(), as after a crash
+
+        LocalStorage reopened = open(1000);
+        assertEquals(Map.of(3, 4L, player, 7L), points(reopened));
+        assertEquals("Steve", reopened.getPlayerName(player));
+        reopened.close();
+    }
+
+    @Test
+    void tornLastLineIsDropped() throws IOException {
+        LocalStorage storage = open(1000);
+        assertTrue(write(storage, 1, PointDelta.set(5)));
+        assertTrue(write(storage, 2, PointDelta.set(6)));
+
+        // Crash while writing "S\tt:1\t123\n": a prefix that would parse as 12
+        Path journal = dir.resolve("journal.tsv");
+        Files.writeString(journal, "S\tt:1\t12", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        LocalStorage reopened = open(1000);
+        assertEquals(Map.of(1, 5L, 2, 6L), points(reopened));
+
+        // New entries start on a line of their own
+        assertTrue(write(reopened, 1, PointDelta.add(1)));
+        LocalStorage again = open(1000);
+        assertEquals(Map.of(1, 6L, 2, 6L), points(again));
+        again.close();
+    }
+
+    @Test
+    void unreadableLineIsSkipped() throws IOException {
+        LocalStorage storage = open(1000);
+        assertTrue(write(storage, 1, PointDelta.set(5)));
+        Files.writeString(dir.resolve("journal.tsv"), "S\tt:x\t1\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertTrue(write(storage, 2, PointDelta.set(6)));
+
+        LocalStorage reopened = open(1000);
+        assertEquals(Map.of(1, 5L, 2, 6L), points(reopened));
+        reopened.close();
+    }
+
+    @Test
+    void compactionRunsInBackgroundAndDropsJournals() throws Exception {
+        LocalStorage storage = open(10);
+        for (int i = 0; i < 95; i++) {
+            assertTrue(write(storage, i % 7, PointDelta.add(1)));
+        }
+
+        // Snapshot written and set-aside journals deleted by the background thread
+        for (int i = 0; i < 500 && rotatedJournals() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, rotatedJournals());
+        assertTrue(Files.isRegularFile(dir.resolve("snapshot.tsv")));
+
+        Map<Object, Long> expected = points(storage);
+        assertEquals(95L, expected.values().stream().mapToLong(Long::longValue).sum());
+        LocalStorage reopened = open(10);
+        assertEquals(expected, points(reopened));
+        reopened.close();
+    }
+
+    @Test
+    void journalsOfUnfinishedCompactionAreReplayedInOrder() throws IOException {
+        Files.writeString(dir.resolve("snapshot.tsv"), "N\t3\nS\tt:1\t1\nS\tt:2\t1\n", StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("journal.9.tsv"), "S\tt:1\t9\n", StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("journal.10.tsv"), "S\tt:1\t10\nS\tt:3\t10\n", StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("journal.tsv"), "S\tt:3\t11\n", StandardCharsets.UTF_8);
+
+        LocalStorage storage = open(1000);
+        assertEquals(Map.of(1, 10L, 2, 1L, 3, 11L), points(storage));
+
+        // Closing puts everything into the snapshot
+        storage.close();
+        assertEquals(0, rotatedJournals());
+        assertFalse(Files.exists(dir.resolve("journal.tsv")));
+        assertEquals(Map.of(1, 10L, 2, 1L, 3, 11L), points(open(1000)));
+    }
+
+    @Test
+    void closeWritesSnapshotAndClearsJournal() throws IOException {
+        LocalStorage storage = open(1000);
+        assertTrue(write(storage, 1, PointDelta.set(5)));
+        storage.close();
+
+        assertFalse(Files.exists(dir.resolve("journal.tsv")));
+        assertEquals(List.of("N\t0", "S\tt:1\t5"), Files.readAllLines(dir.resolve("snapshot.tsv")));
+        assertEquals(Map.of(1, 5L), points(open(1000)));
+    }
+
+    private long rotatedJournals() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().matches("journal\\.\\d+\\.tsv")).count();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.emrage.twitchbattleapi.teams;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TeamTest {
+
+    @Test
+    void resolvedColorFollowsColorChanges() {
+        Team team = new Team(1, "red", "Red", "#FF0000");
+        assertEquals(0xFF0000, team.getResolvedColor().getRgb());
+        assertSame(team.getResolvedColor(), team.getResolvedColor());
+
+        team.setColor("#0000FF");
+        assertEquals(0x0000FF, team.getResolvedColor().getRgb());
+
+        team.setColor("no color");
+        assertNull(team.getResolvedColor());
+        team.setColor(null);
+        assertNull(team.getResolvedColor());
+    }
+
+    @Test
+    void resolvedColorIsNeverOlderThanTheColor() throws Exception {
+        Team team = new Team(1, "red", "Red", "#FF0000");
+        AtomicBoolean running = new AtomicBoolean(true);
+        // Odd while the color is being changed, so readers only compare values of a finished change
+        AtomicInteger version = new AtomicInteger();
+        AtomicInteger outdated = new AtomicInteger();
+
+        // Resolve concurrently and may store a result for the color they read before a change
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    int before = version.get();
+                    int rgb = team.getResolvedColor().getRgb();
+                    String color = team.getColor();
+                    if (before % 2 == 0 && version.get() == before && rgb != Integer.parseInt(color.substring(1), 16)) {
+                        outdated.incrementAndGet();
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        try {
+            // Long enough for the threads to be interleaved often, even on a single core
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            for (int i = 0; System.nanoTime() < end; i++) {
+                int rgb = i % 2 == 0 ? 0x00FF00 : 0xFF0000;
+                version.incrementAndGet();
+                team.setColor(String.format("#%06X", rgb));
+                version.incrementAndGet();
+                if (team.getResolvedColor().getRgb() != rgb) {
+                    outdated.incrementAndGet();
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        assertEquals(0, outdated.get());
+    }
+
+    @Test
+    void batchChangesKeepJoinOrder() {
+        Team team = new Team(1, "red", "Red", "#FF0000");
+        UUID a = new UUID(0, 1);
+        UUID b = new UUID(0, 2);
+        UUID c = new UUID(0, 3);
+        team.setMembers(List.of(b, a));
+        team.addMembers(List.of(a, c));
+        assertEquals(List.of(b, a, c), new ArrayList<>(team.getMembers()));
+
+        Set<UUID> before = team.getMembers();
+        team.addMembers(List.of(a, b));
+        assertSame(before, team.getMembers());
+        assertFalse(team.removeMembers(List.of(new UUID(0, 4))));
+
+        assertTrue(team.removeMembers(List.of(a, c)));
+        assertEquals(List.of(b), new ArrayList<>(team.getMembers()));
+        assertEquals(List.of(b, a, c), new ArrayList<>(before));
+    }
+}
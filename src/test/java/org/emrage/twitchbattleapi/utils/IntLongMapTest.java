@@ -0,0 +1,68 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IntLongMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            int keySpace = 20 + random.nextInt(300);
+
+            IntLongMap map = new IntLongMap(4);
+            Map<Integer, Long> reference = new HashMap<>();
+            for (int step = 0; step < 20_000; step++) {
+                // Negative keys check that the key survives being stored in a long
+                int key = random.nextInt(keySpace) - keySpace / 2;
+                long value = random.nextInt(2000) - 1000;
+                switch (random.nextInt(5)) {
+                    case 0, 1 -> {
+                        map.put(key, value);
+                        reference.put(key, value);
+                    }
+                    case 2 -> assertEquals(reference.merge(key, value, Long::sum).longValue(), map.addTo(key, value));
+                    case 3 -> assertEquals(reference.remove(key) != null, map.remove(key));
+                    default -> {
+                        assertEquals(reference.containsKey(key), map.containsKey(key));
+                        assertEquals(reference.getOrDefault(key, -1L).longValue(), map.get(key, -1L));
+                    }
+                }
+                if (step % 1000 == 0) {
+                    assertSameContent(reference, map);
+                }
+            }
+            assertSameContent(reference, map);
+        }
+    }
+
+    @Test
+    void mapViewMatchesContent() {
+        IntLongMap map = new IntLongMap();
+        map.put(1, 5L);
+        map.put(-2, Long.MIN_VALUE);
+
+        Map<Integer, Long> view = map.asMap();
+        assertEquals(5L, view.get(1));
+        assertEquals(Long.MIN_VALUE, view.get(-2));
+        assertNull(view.get(3));
+        assertNull(view.get(1L));
+        assertEquals(Map.of(1, 5L, -2, Long.MIN_VALUE), new HashMap<>(view));
+    }
+
+    private static void assertSameContent(Map<Integer, Long> reference, IntLongMap map) {
+        assertEquals(reference.size(), map.size());
+        assertEquals(reference, new HashMap<>(map.asMap()));
+
+        Map<Integer, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(reference, visited);
+    }
+}
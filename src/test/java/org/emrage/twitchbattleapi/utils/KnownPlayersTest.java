@@ -0,0 +1,44 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KnownPlayersTest {
+
+    @Test
+    void snapshotRoundTrip() {
+        KnownPlayers players = new KnownPlayers();
+        UUID[] uuids = new UUID[100];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+            players.add(uuids[i]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) players.estimateSnapshotSize());
+        assertTrue(players.writeSnapshot(buffer));
+        buffer.flip();
+
+        KnownPlayers loaded = new KnownPlayers();
+        assertTrue(loaded.load(buffer));
+        assertEquals(100, loaded.size());
+        for (UUID uuid : uuids) {
+            assertTrue(loaded.contains(uuid));
+        }
+    }
+
+    @Test
+    void missingOrTruncatedSnapshotIsIgnored() {
+        KnownPlayers players = new KnownPlayers();
+        assertFalse(players.load(null));
+
+        ByteBuffer truncated = ByteBuffer.allocate(12).putInt(2).putLong(1L);
+        truncated.flip();
+        assertFalse(players.load(truncated));
+    }
+}
@@ -0,0 +1,90 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void emptyHistogramReturnsZero() {
+        assertEquals(0L, histogram.getPercentile(0.0));
+        assertEquals(0L, histogram.getPercentile(50.0));
+        assertEquals(0L, histogram.getPercentile(100.0));
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0.0, histogram.getMean());
+        assertEquals(0L, histogram.getCount());
+    }
+
+    @Test
+    void valuesBelow32AreExact() {
+        for (long value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+        for (int k = 0; k < 32; k++) {
+            // Halfway into the k-th value, so rounding cannot select a neighbour
+            assertEquals(k, histogram.getPercentile((k + 0.5) * 100.0 / 32), "value " + k);
+        }
+        assertEquals(31L, histogram.getPercentile(100.0));
+        assertEquals(15.5, histogram.getMean());
+    }
+
+    @Test
+    void relativeErrorIsBoundedAtBucketEdges() {
+        List<Long> values = new ArrayList<>();
+        for (int bit = 5; bit < 63; bit++) {
+            long power = 1L << bit;
+            values.add(power - 1);
+            values.add(power);
+            values.add(power + 1);
+            // Edges of the sub-buckets of this power of two
+            long width = power >>> 5;
+            values.add(power + 17 * width - 1);
+            values.add(power + 17 * width);
+        }
+        values.add(Long.MAX_VALUE - 1);
+
+        for (long value : values) {
+            LatencyHistogram single = new LatencyHistogram();
+            single.record(value);
+            // A higher value keeps the maximum from capping the result
+            single.record(Long.MAX_VALUE);
+
+            long reported = single.getPercentile(50.0);
+            assertTrue(reported >= value, "value " + value + " reported as " + reported);
+            assertTrue(reported - value <= value / 32, "value " + value + " reported as " + reported);
+        }
+    }
+
+    @Test
+    void hundredthPercentileIsTheMaximum() {
+        histogram.record(1000);
+        histogram.record(1001);
+        assertEquals(1001L, histogram.getPercentile(100.0));
+        assertEquals(1001L, histogram.getPercentile(150.0));
+        assertEquals(1001L, histogram.getMax());
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        histogram.record(-5);
+        assertEquals(1L, histogram.getCount());
+        assertEquals(0L, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    void resetRemovesAllValues() {
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getPercentile(100.0));
+    }
+}
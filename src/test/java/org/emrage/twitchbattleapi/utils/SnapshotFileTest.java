@@ -0,0 +1,146 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotFileTest {
+    @TempDir
+    Path dir;
+
+    private File file() {
+        return dir.resolve("cache.snapshot").toFile();
+    }
+
+    private static SnapshotFile.Section bytes(int... values) {
+        byte[] content = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            content[i] = (byte) values[i];
+        }
+        return SnapshotFile.section(() -> content.length, buffer -> {
+            buffer.put(content);
+            return true;
+        });
+    }
+
+    private static byte[] remaining(ByteBuffer buffer) {
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return content;
+    }
+
+    @Test
+    void roundTrip() {
+        assertTrue(new SnapshotFile(file(), 7L).write(1234L, List.of(bytes(1, 2, 3), bytes(), bytes(4))));
+
+        SnapshotFile snapshot = new SnapshotFile(file(), 7L);
+        assertTrue(snapshot.read());
+        assertEquals(1234L, snapshot.getValidFrom());
+        assertTrue(snapshot.getCreatedAt() > 0);
+        assertArrayEquals(new byte[]{1, 2, 3}, remaining(snapshot.getSection(0)));
+        assertArrayEquals(new byte[0], remaining(snapshot.getSection(1)));
+        assertArrayEquals(new byte[]{4}, remaining(snapshot.getSection(2)));
+        assertNull(snapshot.getSection(3));
+
+        snapshot.release();
+        assertNull(snapshot.getSection(0));
+    }
+
+    @Test
+    void fileCanBeReplacedWhileRead() {
+        SnapshotFile snapshot = new SnapshotFile(file(), 7L);
+        assertTrue(snapshot.write(1L, List.of(bytes(1))));
+        assertTrue(snapshot.read());
+
+        // Shutdown writes the next snapshot over the file read at startup
+        assertTrue(snapshot.write(2L, List.of(bytes(2))));
+        assertArrayEquals(new byte[]{1}, remaining(snapshot.getSection(0)));
+
+        SnapshotFile next = new SnapshotFile(file(), 7L);
+        assertTrue(next.read());
+        assertEquals(2L, next.getValidFrom());
+        assertArrayEquals(new byte[]{2}, remaining(next.getSection(0)));
+        assertFalse(Files.exists(dir.resolve("cache.snapshot.tmp")));
+    }
+
+    @Test
+    void missingFileIsIgnored() {
+        assertFalse(new SnapshotFile(file(), 7L).read());
+    }
+
+    @Test
+    void truncatedFileIsIgnored() throws IOException {
+        assertTrue(new SnapshotFile(file(), 7L).write(1L, List.of(bytes(1, 2, 3, 4, 5, 6, 7, 8))));
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            raf.setLength(raf.length() - 4);
+        }
+        assertFalse(new SnapshotFile(file(), 7L).read());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            raf.setLength(20);
+        }
+        assertFalse(new SnapshotFile(file(), 7L).read());
+    }
+
+    @Test
+    void corruptSectionTableIsIgnored() throws IOException {
+        assertTrue(new SnapshotFile(file(), 7L).write(1L, List.of(bytes(1, 2, 3))));
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            // Section count far beyond the file
+            raf.seek(32);
+            raf.writeInt(1_000_000);
+        }
+        assertFalse(new SnapshotFile(file(), 7L).read());
+
+        assertTrue(new SnapshotFile(file(), 7L).write(1L, List.of(bytes(1, 2, 3))));
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            // Section length past the end of the file
+            raf.seek(40);
+            raf.writeInt(100);
+        }
+        assertFalse(new SnapshotFile(file(), 7L).read());
+    }
+
+    @Test
+    void otherVersionOrSourceIsIgnored() throws IOException {
+        assertTrue(new SnapshotFile(file(), 7L).write(1L, List.of(bytes(1))));
+        assertFalse(new SnapshotFile(file(), 8L).read());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            raf.seek(4);
+            raf.writeInt(SnapshotFile.VERSION + 1);
+        }
+        assertFalse(new SnapshotFile(file(), 7L).read());
+    }
+
+    @Test
+    void failedWriteKeepsPreviousFile() {
+        SnapshotFile snapshot = new SnapshotFile(file(), 7L);
+        assertTrue(snapshot.write(1L, List.of(bytes(1))));
+
+        // A section that refuses to be stored
+        assertFalse(snapshot.write(2L, List.of(bytes(2), SnapshotFile.section(() -> 0, buffer -> false))));
+        // A section that grew beyond its estimate
+        assertFalse(snapshot.write(3L, List.of(SnapshotFile.section(() -> 1, buffer -> {
+            buffer.putLong(1L);
+            return true;
+        }))));
+
+        assertTrue(snapshot.read());
+        assertEquals(1L, snapshot.getValidFrom());
+        assertArrayEquals(new byte[]{1}, remaining(snapshot.getSection(0)));
+    }
+}
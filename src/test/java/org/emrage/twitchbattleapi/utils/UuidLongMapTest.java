@@ -0,0 +1,91 @@
+package org.emrage.twitchbattleapi.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UuidLongMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            // A small key space makes removals hit long probe chains and keys come back after removal
+            UUID[] keys = new UUID[50 + random.nextInt(500)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new UUID(random.nextLong(), random.nextLong());
+            }
+
+            UuidLongMap map = new UuidLongMap(4);
+            Map<UUID, Long> reference = new HashMap<>();
+            for (int step = 0; step < 20_000; step++) {
+                UUID key = keys[random.nextInt(keys.length)];
+                long value = random.nextInt(2000) - 1000;
+                switch (random.nextInt(5)) {
+                    case 0, 1 -> {
+                        map.put(key, value);
+                        reference.put(key, value);
+                    }
+                    case 2 -> assertEquals(reference.merge(key, value, Long::sum).longValue(), map.addTo(key, value));
+                    case 3 -> assertEquals(reference.remove(key) != null, map.remove(key));
+                    default -> {
+                        assertEquals(reference.containsKey(key), map.containsKey(key));
+                        assertEquals(reference.getOrDefault(key, -1L).longValue(), map.get(key, -1L));
+                    }
+                }
+                if (step % 1000 == 0) {
+                    assertSameContent(reference, map);
+                }
+            }
+            assertSameContent(reference, map);
+        }
+    }
+
+    @Test
+    void mapViewMatchesContent() {
+        UuidLongMap map = new UuidLongMap();
+        UUID present = UUID.randomUUID();
+        UUID minValue = UUID.randomUUID();
+        UUID absent = UUID.randomUUID();
+        map.put(present, 5L);
+        map.put(minValue, Long.MIN_VALUE);
+
+        Map<UUID, Long> view = map.asMap();
+        assertEquals(5L, view.get(present));
+        assertEquals(Long.MIN_VALUE, view.get(minValue));
+        assertNull(view.get(absent));
+        assertNull(view.get("not a uuid"));
+        assertTrue(view.containsKey(present));
+        assertFalse(view.containsKey(absent));
+        assertEquals(Map.of(present, 5L, minValue, Long.MIN_VALUE), new HashMap<>(view));
+    }
+
+    @Test
+    void clearRemovesEverything() {
+        UuidLongMap map = new UuidLongMap();
+        for (int i = 0; i < 1000; i++) {
+            map.put(new UUID(i, i), i);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(new UUID(5, 5)));
+        assertTrue(map.asMap().isEmpty());
+    }
+
+    private static void assertSameContent(Map<UUID, Long> reference, UuidLongMap map) {
+        assertEquals(reference.size(), map.size());
+        assertEquals(reference, new HashMap<>(map.asMap()));
+
+        Map<UUID, Long> visited = new HashMap<>();
+        map.forEach((msb, lsb, value) -> visited.put(new UUID(msb, lsb), value));
+        assertEquals(reference, visited);
+    }
+}